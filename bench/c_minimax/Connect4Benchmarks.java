@@ -0,0 +1,36 @@
+package c_minimax;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//author: Gary Kalmanovich; rights reserved
+
+public class Connect4Benchmarks {
+    // Runs the JMH benchmarks of this folder (bench/), with the allocation profiler on, so every
+    //   benchmark also reports gc.alloc.rate.norm (bytes allocated per call)
+    // The results go to a JSON file. The one committed, bench/bench_results.json, is the baseline
+    //   that later changes are compared to: run again, and diff the scores (or load both in a JMH
+    //   result viewer). Commit a new baseline with the change that moves it, on the same machine
+    // These classes are in package c_minimax, next to what they measure, but are not part of the game
+    //
+    // Build, from the project folder, with jmh-core and jmh-generator-annprocess (and their
+    //   dependencies, jopt-simple and commons-math3) in lib/:
+    //   javac -cp "lib/*" -d bench_bin src/c_minimax/*.java bench/c_minimax/*.java
+    //   (The JavaFX classes need a JDK with JavaFX, as for the game itself)
+    // Usage: java -cp "bench_bin:lib/*" c_minimax.Connect4Benchmarks [regex [result file]]
+    //   regex picks the benchmarks (default: all of them), e.g., Negamax or PositionBench.isWinner
+
+    public static void main(String[] args) throws RunnerException {
+        String include    = args.length > 0 ? args[0] : "c_minimax\\.Connect4.*Bench\\.";
+        String resultFile = args.length > 1 ? args[1] : "bench/bench_results.json";
+        new Runner(new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build()).run();
+    }
+}
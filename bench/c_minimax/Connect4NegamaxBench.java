@@ -0,0 +1,70 @@
+package c_minimax;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//author: Gary Kalmanovich; rights reserved
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx1g" })
+public class Connect4NegamaxBench {
+    // One search of Connect4StrategyB.negamax() to a fixed depth, on the suite of Connect4SearchBenchmark
+    // As there, every search starts from empty tables (and no killers or history) and plays its
+    //   rollouts from the same seed, so every invocation searches the same nodes
+    // Clearing all that is not timed
+
+    @Param({ "", "3", "33", "3323", "3432", "32344", "334332", "3324452", "22343354", "234432" })
+    String moves;
+
+    @Param({ "FULL", "PVS", "MTDF" }) // A Connect4StrategyB.WindowMode, by name: JMH's generated classes
+    String windowMode;                // (in another package) cannot see the enum itself
+
+    @Param({ "5" })
+    int depth;
+
+    private Connect4Position      position;
+    private Connect4StrategyB     strategy;
+    private Connect4SearchContext context;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        position = Connect4Position.fromMoves(moves);
+        strategy = new Connect4StrategyB();
+        strategy.setTables(new Connect4TranspositionTable(16), new Connect4TranspositionTable(64));
+        strategy.setWindowMode(Connect4StrategyB.WindowMode.valueOf(windowMode));
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() { // The same search every time
+        strategy.rand = strategy.new FastRandomizer(1);
+        if (strategy.ordering != null) strategy.ordering.clear(); // Killers and history of the last search
+        strategy.map.clear();
+        strategy.searchTable.clear();
+        context = new Connect4SearchContext();
+        context.setOriginalPlayer(position.getPlayer());
+        context.setMaxSearchTimeForThisPos(Long.MAX_VALUE / 4);
+        context.setMinDepthSearchForThisPos(depth);
+        context.setMaxDepthSearchForThisPos(depth);
+    }
+
+    @Benchmark
+    public InterfaceSearchResult negamax() {
+        return strategy.negamax(position, context, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
+    }
+}
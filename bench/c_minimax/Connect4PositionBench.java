@@ -0,0 +1,88 @@
+package c_minimax;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//author: Gary Kalmanovich; rights reserved
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Connect4PositionBench {
+    // The calls of Connect4Position made at every node of a search
+    // Each benchmark returns its result, so JMH consumes it and it cannot be optimized away
+
+    @Param({ "", "3323", "334332", "22343354" }) // Columns played from the empty board, player 1 first
+    String moves;
+
+    private Connect4Position position;
+    private Connect4Iterator lastMove; // Spot of the last chip played (the empty bottom spot of the center column for the empty board)
+    private Connect4Iterator nextMove; // Next free spot of the center column
+    private int              nextColor;
+
+    @Setup
+    public void setUp() {
+        position = Connect4Position.fromMoves(moves);
+        int lastColumn = moves.isEmpty() ? position.nC()/2 : moves.charAt(moves.length()-1) - '0';
+        lastMove = new Connect4Iterator(position.nC(), position.nR());
+        lastMove.set(lastColumn, position.nR()-Math.max(getColumnChipCount(lastColumn), 1));
+        int nextColumn = position.nC()/2;
+        nextMove = new Connect4Iterator(position.nC(), position.nR());
+        nextMove.set(nextColumn, position.nR()-getColumnChipCount(nextColumn)-1);
+        nextColor = position.getPlayer();
+    }
+
+    private int getColumnChipCount(int iC) {
+        Connect4Iterator column = new Connect4Iterator(position.nC(), position.nR());
+        column.set(iC, 0);
+        return position.getChipCount(column);
+    }
+
+    @Benchmark
+    public Connect4Position copy() { // Baseline for setColor()
+        return new Connect4Position(position);
+    }
+
+    @Benchmark
+    public Connect4Position setColor() { // Includes a copy() (setColor cannot be taken back)
+        Connect4Position filled = new Connect4Position(position);
+        filled.setColor(nextMove, nextColor);
+        return filled;
+    }
+
+    @Benchmark
+    public int makeUnmakeMove() { // What the searches use in place of a copy and setColor()
+        int iR = position.makeMove(nextMove.iC());
+        position.unmakeMove();
+        return iR;
+    }
+
+    @Benchmark
+    public int isWinnerAt() {
+        return position.isWinner(lastMove);
+    }
+
+    @Benchmark
+    public int isWinner() {
+        return position.isWinner();
+    }
+
+    @Benchmark
+    public int getChipCount() {
+        return position.getChipCount();
+    }
+}
@@ -0,0 +1,55 @@
+package c_minimax;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//author: Gary Kalmanovich; rights reserved
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Connect4RolloutBench {
+    // One random game to the end, as played at the leaves of Connect4Strategy (uniform)
+    //   and Connect4StrategyB (center weighted)
+    // Every game is a different one, so the time is an average over games from the same position
+
+    @Param({ "", "3323", "22343354" }) // Columns played from the empty board, player 1 first
+    String moves;
+
+    @Param({ "false", "true" })
+    boolean isCenterWeighted;
+
+    private Connect4Position position;
+    private Connect4Rollout  rollout;
+
+    @Setup
+    public void setUp() {
+        position = Connect4Position.fromMoves(moves);
+        rollout  = new Connect4Rollout(position.nC(), position.nR(), new SplittableRandom(1), isCenterWeighted);
+    }
+
+    @Benchmark
+    public int playRandomlyUntilEnd() {
+        return rollout.playRandomlyUntilEnd(position, position.getPlayer());
+    }
+
+    @Benchmark
+    public int playRandomlyUntilEndFromBitboards() { // No position at all, as Connect4StrategyMCTS calls it
+        return rollout.playRandomlyUntilEnd(position.getOccupiedBitboard(), position.getColorBitboard(position.getPlayer()), position.getPlayer());
+    }
+}
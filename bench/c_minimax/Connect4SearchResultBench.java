@@ -0,0 +1,61 @@
+package c_minimax;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//author: Gary Kalmanovich; rights reserved
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Connect4SearchResultBench {
+    // Packing a result into the int kept in the tables, and unpacking it again
+    // Unpacking makes a new Connect4Iterator every time, which shows in gc.alloc.rate.norm
+
+    private Connect4SearchResult result;
+    private int                  compacted;
+
+    @Setup
+    public void setUp() {
+        Connect4Iterator move = new Connect4Iterator(7, 6);
+        move.set(2, 4);
+        result = new Connect4SearchResult();
+        result.setBestMoveSoFar(move, 0.375f);
+        compacted = result.getClassStateCompacted();
+    }
+
+    @Benchmark
+    public int getClassStateCompacted() {
+        return result.getClassStateCompacted();
+    }
+
+    @Benchmark
+    public int getClassStateCompactedMirrored() {
+        return result.getClassStateCompacted(true);
+    }
+
+    @Benchmark
+    public Connect4SearchResult setClassStateFromCompacted() {
+        result.setClassStateFromCompacted(compacted);
+        return result;
+    }
+
+    @Benchmark
+    public Connect4SearchResult setClassStateFromCompactedMirrored() {
+        result.setClassStateFromCompacted(compacted, true);
+        return result;
+    }
+}
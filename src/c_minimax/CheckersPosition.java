@@ -113,4 +113,16 @@ public class CheckersPosition implements InterfacePosition {
         return 0;
     }
 
+    @Override
+    public int makeMove(int iC) {
+        // TODO Auto-generated method stub
+        return 0;
+    }
+
+    @Override
+    public void unmakeMove() {
+        // TODO Auto-generated method stub
+
+    }
+
 }
@@ -0,0 +1,159 @@
+package c_minimax;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+//author: Gary Kalmanovich; rights reserved
+
+public class Connect4Arena {
+    // Headless matches between two strategies, many games at once, with no view and no UI delay
+    // Games come in pairs: both start from the same random opening, and each strategy is
+    //   player 1 in one of them. Every game gets two new strategies, so each side searches
+    //   with nothing but its own tables, which start empty: nothing is carried over from the
+    //   other side, from another game, or from another run (the tables of Connect4StrategyB are
+    //   in memory, not scores.c4t). The games are then independent, at the cost of strategies
+    //   that do not learn from game to game (as they do from move to move in Connect4Control).
+    // So that the games at once do not take time from each other, a strategy plays its rollouts
+    //   on its own game thread (not on the common pool that all of them share)
+    // The result is from strategy A's side: wins, draws, losses, and the Elo difference with
+    //   its 95% confidence interval (from the spread of the game scores)
+    //
+    // Usage: Connect4Arena [games [budget [A [B [threads [opening plies]]]]]]
+    //   budget: per move, either milliseconds (e.g., 100ms) or nodes (e.g., 20000n,
+    //     as counted by Connect4SearchClock, so they only compare within one strategy)
+    //   A, B:   Strategy, Dalen, MCTS, or B[:search mode[:threads[:window mode]]]
+    //     (see Connect4StrategyB.SearchMode and WindowMode), e.g., B:SERIAL:1:PVS
+
+    private static final int  TABLE_MEGABYTES = 16; // Per table of Connect4StrategyB, two per strategy and two strategies per game
+    private static final long NODE_BUDGET_TIME_LIMIT = 60000000000L; // 1 minute (in nanoseconds), a node budget comes first
+
+    public static void main(String[] args) throws Exception {
+        int    nGames       = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        String budget       = args.length > 1 ? args[1] : "100ms";
+        String nameA        = args.length > 2 ? args[2] : "B";
+        String nameB        = args.length > 3 ? args[3] : "Dalen";
+        int    nThreads     = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        int    openingPlies = args.length > 5 ? Integer.parseInt(args[5]) : 2;
+        boolean isNodeBudget = budget.endsWith("n");
+        long   budgetValue  = Long.parseLong(budget.replaceAll("[^0-9]", ""));
+        nGames += nGames % 2; // Whole pairs
+
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(new OutputStream() { // The strategies print every move, which would drown the report
+            @Override public void write(int b) { }
+        }));
+        report.println("Connect4Arena: " + nameA + " vs " + nameB + ", " + nGames + " games, " + budget + " per move, " + nThreads + " threads");
+
+        Random rand = new Random();
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        List<Future<Integer>> games = new ArrayList<Future<Integer>>();
+        long startTime = System.nanoTime();
+        for (int iPair = 0; iPair < nGames / 2; iPair++) {
+            Connect4Position opening = getOpening(openingPlies, rand);
+            for (int iPlayerA = 1; iPlayerA <= 2; iPlayerA++) {
+                int playerA = iPlayerA;
+                games.add(pool.submit(() -> {
+                    InterfaceStrategy strategyA = newStrategy(nameA);
+                    InterfaceStrategy strategyB = newStrategy(nameB);
+                    try {
+                        int winner = playGame(new Connect4Position(opening), playerA == 1 ? strategyA : strategyB, playerA == 1 ? strategyB : strategyA, isNodeBudget, budgetValue);
+                        return winner == 0 ? 0 : winner == playerA ? 1 : -1; // For A
+                    } finally {
+                        close(strategyA);
+                        close(strategyB);
+                    }
+                }));
+            }
+        }
+
+        int nWins = 0, nDraws = 0, nLosses = 0;
+        for (int iGame = 0; iGame < games.size(); iGame++) {
+            int result = games.get(iGame).get();
+            if      (result > 0) nWins++;
+            else if (result < 0) nLosses++;
+            else                 nDraws++;
+            if ((iGame + 1) % Math.max(games.size() / 10, 1) == 0) // Progress, every tenth of the games
+                report.println("  " + (iGame + 1) + " games: +" + nWins + " =" + nDraws + " -" + nLosses
+                        + " (" + (System.nanoTime() - startTime) / 1000000000L + " s)");
+        }
+        pool.shutdown();
+        report(report, nameA, nWins, nDraws, nLosses);
+    }
+
+    static InterfaceStrategy newStrategy(String name) {
+        String[] parts = name.split(":");
+        switch (parts[0]) {
+        case "Strategy":
+            Connect4Strategy plain = new Connect4Strategy();
+            plain.setRolloutPool(new ForkJoinPool(1)); // Parallelism 1: on the calling thread
+            return plain;
+        case "Dalen":    return new Connect4StrategyDalen();
+        case "MCTS":     return new Connect4StrategyMCTS(64); // Megabytes of nodes, for this game only
+        case "B":
+            Connect4StrategyB.SearchMode searchMode = parts.length > 1 ? Connect4StrategyB.SearchMode.valueOf(parts[1]) : Connect4StrategyB.SearchMode.SERIAL;
+            int nThreads = parts.length > 2 ? Integer.parseInt(parts[2]) : 1;
+            Connect4StrategyB strategy = new Connect4StrategyB(searchMode, nThreads);
+            strategy.setTables(new Connect4TranspositionTable(TABLE_MEGABYTES), new Connect4TranspositionTable(TABLE_MEGABYTES));
+            if (searchMode == Connect4StrategyB.SearchMode.SERIAL) strategy.setRolloutPool(new ForkJoinPool(1)); // A parallel one uses its own search pool
+            if (parts.length > 3) strategy.setWindowMode(Connect4StrategyB.WindowMode.valueOf(parts[3]));
+            return strategy;
+        default:
+            throw new IllegalArgumentException("Unknown strategy: " + name);
+        }
+    }
+
+    private static void close(InterfaceStrategy strategy) { // Its search pool, if it has one
+        if (strategy instanceof Connect4StrategyB) ((Connect4StrategyB) strategy).close();
+    }
+
+    private static Connect4Position getOpening(int nPlies, Random rand) { // Random moves that do not end the game
+        Connect4Position position = new Connect4Position(7, 6);
+        position.setPlayer(1);
+        while (position.getChipCount() < nPlies) {
+            int iC = rand.nextInt(position.nC());
+            if (position.makeMove(iC) < 0) continue; // The column is full
+            if (position.isWinner() >= 0) position.unmakeMove();
+        }
+        return position;
+    }
+
+    static int playGame(Connect4Position position, InterfaceStrategy player1, InterfaceStrategy player2, boolean isNodeBudget, long budget) {
+        // The winner, 0 for a draw. A strategy that plays into a full column loses.
+        while (position.isWinner() < 0) {
+            int player = position.getPlayer();
+            Connect4SearchContext context = new Connect4SearchContext();
+            context.setOriginalPlayer(player);
+            context.setMaxSearchTimeForThisPos(isNodeBudget ? NODE_BUDGET_TIME_LIMIT : budget * 1000000L);
+            if (isNodeBudget) context.setNodeLimit(budget);
+            context.setMaxDepthSearchForThisPos(15);
+            context.setMinDepthSearchForThisPos(5);
+            InterfaceSearchResult result = (player == 1 ? player1 : player2).getBestMove(position, context);
+            if (result == null || result.getBestMoveSoFar() == null || position.makeMove(result.getBestMoveSoFar().iC()) < 0) {
+                System.err.println("Error(Connect4Arena::playGame): player " + player + " made no legal move, and loses.");
+                return 3 - player;
+            }
+        }
+        return position.isWinner();
+    }
+
+    private static void report(PrintStream report, String nameA, int nWins, int nDraws, int nLosses) {
+        int    nGames = nWins + nDraws + nLosses;
+        double score  = (nWins + 0.5 * nDraws) / nGames; // Per game, for A
+        double variance = (nWins * (1 - score) * (1 - score) + nDraws * (0.5 - score) * (0.5 - score) + nLosses * score * score) / nGames;
+        double margin = 1.96 * Math.sqrt(variance / nGames); // 95% of the normal distribution
+        report.printf("%s: wins %d, draws %d, losses %d (score %.1f%%)%n", nameA, nWins, nDraws, nLosses, 100 * score);
+        report.printf("Elo difference: %+.0f (95%% confidence interval: %+.0f to %+.0f)%n", getElo(score), getElo(score - margin), getElo(score + margin));
+    }
+
+    static double getElo(double score) { // Elo difference that makes score the expected score
+        double clamped = Math.min(Math.max(score, 1e-6), 1 - 1e-6); // All wins (or losses) is infinitely many Elo
+        return -400 * Math.log10(1 / clamped - 1);
+    }
+}
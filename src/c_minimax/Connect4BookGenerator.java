@@ -0,0 +1,83 @@
+package c_minimax;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+//author: Gary Kalmanovich; rights reserved
+
+public class Connect4BookGenerator {
+    // Offline: searches every position of the first nPlies plies with Connect4StrategyB,
+    // and writes the results as a Connect4OpeningBook
+    // Positions are taken up to mirror symmetry, and positions that are already won are left out
+    // By default every position gets the time of a live move (see Connect4Control), so the book is
+    //   no weaker than the search it stands in for (Connect4StrategyB still searches any book
+    //   result that is not a win or a loss, with the book move first)
+    //
+    // Usage: Connect4BookGenerator [nPlies [milliseconds per position [book file]]]
+    //   nPlies:       default 4
+    //   milliseconds: default 2000
+    // It takes about (positions up to nPlies) * milliseconds, so the defaults take about 25 minutes:
+    //   nPlies     4     5      6      7       8
+    //   positions  719   2863   11094  38203   129498
+    //   at 2000 ms 24 m  1.6 h  6.2 h  21 h    3 days
+
+    public static void main(String[] args) throws IOException {
+        int  nPlies       = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        long milliseconds = args.length > 1 ? Long.parseLong(args[1])   : 2000;
+        File file         = new File(args.length > 2 ? args[2] : Connect4StrategyB.BOOK_FILE);
+        int  nC = 7;
+        int  nR = 6;
+
+        Connect4StrategyB.book = Connect4OpeningBook.empty(); // Do not read an old book while making a new one
+        InterfaceStrategy strategy = new Connect4StrategyB(Connect4StrategyB.SearchMode.ROOT_PARALLEL, Runtime.getRuntime().availableProcessors());
+
+        SortedMap<Long,Integer> entries = new TreeMap<Long,Integer>();
+        List<Connect4Position> ply = new ArrayList<Connect4Position>();
+        Connect4Position start = new Connect4Position(nC, nR);
+        start.setPlayer(1);
+        ply.add(start);
+        int minDepth = 5; // Carried from one search to the next, as Connect4Control does
+        long startTime = System.nanoTime();
+        for (int iPly = 0; iPly <= nPlies; iPly++) {
+            System.out.println("Connect4BookGenerator: ply " + iPly + ", " + ply.size() + " positions");
+            for (Connect4Position position : ply) {
+                Connect4SearchContext context = new Connect4SearchContext();
+                context.setOriginalPlayer(position.getPlayer());
+                context.setMaxSearchTimeForThisPos(milliseconds * 1000000L);
+                context.setMaxDepthSearchForThisPos(15);
+                context.setMinDepthSearchForThisPos(minDepth);
+                InterfaceSearchResult result = strategy.getBestMove(position, context);
+                minDepth = Math.max(context.getMinDepthSearchForThisPos(), 1);
+                long key = position.getCanonicalRawPosition();
+                entries.put(key, ((Connect4SearchResult) result).getClassStateCompacted(key != position.getRawPosition()));
+            }
+            if (iPly < nPlies) ply = getNextPly(ply);
+        }
+        Connect4OpeningBook.write(file, nC, nR, entries);
+        System.out.println("Connect4BookGenerator: wrote " + entries.size() + " positions to " + file + " in "
+                + (System.nanoTime() - startTime) / 1000000000L + " s");
+    }
+
+    private static List<Connect4Position> getNextPly(List<Connect4Position> ply) {
+        // Every position one move later that is not over yet, once per mirror pair
+        Set<Long> seen = new HashSet<Long>();
+        List<Connect4Position> nextPly = new ArrayList<Connect4Position>();
+        for (Connect4Position position : ply) {
+            for (int iC = 0; iC < position.nC(); iC++) {
+                InterfaceIterator iPos = new Connect4Iterator(position.nC(), position.nR());
+                iPos.set(iC, 0);
+                if (position.getChipCount(iPos) == position.nR()) continue; // The column is full
+                Connect4Position next = new Connect4Position(position);
+                next.makeMove(iC);
+                if (next.isWinner() < 0 && seen.add(next.getCanonicalRawPosition())) nextPly.add(next);
+            }
+        }
+        return nextPly;
+    }
+}
@@ -2,7 +2,7 @@ package c_minimax;
 
 //author: Gary Kalmanovich; rights reserved
 
-public class Connect4Control implements InterfaceControl, ThreadCompleteListener {
+public class Connect4Control implements InterfaceControl {
 	// This is the controller class. It is also a model class
 	// Its responsibilities are:
 	// - to make sure that the rules of the game are followed
@@ -21,10 +21,27 @@ public class Connect4Control implements InterfaceControl, ThreadCompleteListener
 	private boolean isMoveBlockedByCalculation = false;
 	private int preferedMinDepthPlayer1 = 5; // set to 5 again in resetGame()
 	private int preferedMinDepthPlayer2 = 5; // set to 5 again in resetGame()
+	// One engine (thread) per player: a player's searches, ponders included, run one after the other
+	// on its own thread, so the player waiting can ponder while the other one searches
+	private final Connect4Engine[] engines = { new Connect4Engine(), new Connect4Engine() };
+	private volatile Connect4Engine.Search search = null; // The strategy thinking about the current move
+	private long moveDelayMillis = 1000; // UI only: a strategy's move is shown no sooner, so one can follow the game
+	private boolean isStrategyBParallel = false; // Connect4StrategyB searches on one thread, unless opted in (setStrategyBParallel())
+
+	// Pondering: while the other player thinks, the strategy that just moved keeps
+	// searching the position from the other player's side. It thereby searches every
+	// reply, and what it finds stays in its caches (or its tree, for MCTS). The real
+	// move stops it; its result is thrown away, but the caches are not.
+	// Only against a human: when both players are strategies, the ponder would take
+	// cores (a ROOT_PARALLEL search, all of them) from the strategy thinking.
+	static final long PONDER_TIME_LIMIT = 600000000000L; // 10 minutes (in nanoseconds), the real move comes first
+	private boolean isPonderingOn = true;
+	private Connect4Engine.Search ponder = null;
 
 	@Override
 	public void onMove() { // Control is notified of a player (real or
 							// automated) move
+		stopPondering(); // Before any strategy is asked for a move
 		position.setPlayer(currentPlayer);
 		Connect4SearchContext context = new Connect4SearchContext();
 		context.setOriginalPlayer(currentPlayer);
@@ -44,9 +61,7 @@ public class Connect4Control implements InterfaceControl, ThreadCompleteListener
 																				// moves
 																				// deep
 				isMoveBlockedByCalculation = true;
-				NotifyingThread thread = new ThreadStrategy(player1Strategy, position, context);
-				thread.addListener(this); // add ourselves as a listener
-				thread.start(); // Start the Thread
+				startSearch(1, player1Strategy, context);
 			}
 		}
 		if (currentPlayer == 2) {
@@ -61,11 +76,58 @@ public class Connect4Control implements InterfaceControl, ThreadCompleteListener
 																				// moves
 																				// deep
 				isMoveBlockedByCalculation = true;
-				NotifyingThread thread = new ThreadStrategy(player2Strategy, position, context);
-				thread.addListener(this); // add ourselves as a listener
-				thread.start(); // Start the Thread
+				startSearch(2, player2Strategy, context);
 			}
 		}
+		startPondering();
+	}
+
+	private void startSearch(int player, InterfaceStrategy strategy, InterfaceSearchContext context) {
+		Connect4Engine.Search thisSearch = engines[player - 1].search(strategy, position, context, moveDelayMillis);
+		search = thisSearch;
+		thisSearch.whenComplete((result, failure) -> onSearchComplete(thisSearch, result, failure));
+	}
+
+	void setMoveDelay(long moveDelayMillis) { // 0 to play at full speed, e.g., without a view
+		this.moveDelayMillis = moveDelayMillis;
+	}
+
+	void stopSearch() {
+		// The strategy thinking about the current move plays its best move so far, right away
+		Connect4Engine.Search thisSearch = search;
+		if (thisSearch != null)
+			thisSearch.requestStop();
+	}
+
+	void setStrategyBParallel(boolean isStrategyBParallel) {
+		// Opt in (or out): a Connect4StrategyB chosen from now on searches ROOT_PARALLEL, on every core
+		this.isStrategyBParallel = isStrategyBParallel;
+	}
+
+	void setPondering(boolean isPonderingOn) {
+		this.isPonderingOn = isPonderingOn;
+		if (!isPonderingOn)
+			stopPondering();
+	}
+
+	private void startPondering() {
+		InterfaceStrategy ponderStrategy   = currentPlayer == 1 ? player2Strategy : player1Strategy; // The player waiting
+		InterfaceStrategy thinkingStrategy = currentPlayer == 1 ? player1Strategy : player2Strategy;
+		if (!isPonderingOn || ponderStrategy == null || thinkingStrategy != null || position.isWinner() >= 0)
+			return;
+		Connect4SearchContext context = new Connect4SearchContext();
+		context.setOriginalPlayer(currentPlayer);
+		context.setMaxSearchTimeForThisPos(PONDER_TIME_LIMIT);
+		context.setMaxDepthSearchForThisPos(15);
+		context.setMinDepthSearchForThisPos(currentPlayer == 1 ? preferedMinDepthPlayer2 : preferedMinDepthPlayer1);
+		ponder = engines[2 - currentPlayer].search(ponderStrategy, position, context); // currentPlayer is to move, on the other engine
+	}
+
+	private void stopPondering() {
+		if (ponder == null)
+			return;
+		ponder.requestStop(); // No need to wait: its engine starts the next search once the ponder is over
+		ponder = null;
 	}
 
 	@Override
@@ -81,6 +143,7 @@ public class Connect4Control implements InterfaceControl, ThreadCompleteListener
 
 	@Override
 	public void resetGame() {
+		stopPondering();
 		position.reset();
 		currentPlayer = 1;
 		preferedMinDepthPlayer1 = 5; // set to what was in constructor
@@ -100,7 +163,14 @@ public class Connect4Control implements InterfaceControl, ThreadCompleteListener
 
 	@Override
 	public void setStrategy(int player, int strategy) {
-		InterfaceStrategy playerStrategy = strategy == 0 ? null : strategy == 1 ? new Connect4StrategyDalen() : new Connect4StrategyB();
+		InterfaceStrategy playerStrategy = strategy == 0 ? null
+				: strategy == 1 ? new Connect4StrategyDalen()
+				: strategy == 2 && isStrategyBParallel ? new Connect4StrategyB(Connect4StrategyB.SearchMode.ROOT_PARALLEL, Runtime.getRuntime().availableProcessors())
+				: strategy == 2 ? new Connect4StrategyB()
+				: new Connect4StrategyMCTS();
+		InterfaceStrategy oldStrategy = player == 1 ? player1Strategy : player2Strategy;
+		if (oldStrategy instanceof Connect4StrategyB) // All its searches run on this engine, so none is left once it gets here
+			engines[player - 1].afterSearches(((Connect4StrategyB) oldStrategy)::close);
 		if (player == 1)
 			player1Strategy = playerStrategy;
 		else
@@ -110,10 +180,11 @@ public class Connect4Control implements InterfaceControl, ThreadCompleteListener
 
 	@Override
 	public int getStrategy(int player) {
-		if (player == 1)
-			return player1Strategy == null ? 0 : 1;
-		else
-			return player2Strategy == null ? 0 : 1;
+		InterfaceStrategy playerStrategy = player == 1 ? player1Strategy : player2Strategy;
+		return playerStrategy == null ? 0
+				: playerStrategy instanceof Connect4StrategyDalen ? 1
+				: playerStrategy instanceof Connect4StrategyB ? 2
+				: 3; // Same numbering as setStrategy()
 	}
 
 	@Override
@@ -121,25 +192,30 @@ public class Connect4Control implements InterfaceControl, ThreadCompleteListener
 		return position.isWinner() >= 0 || isMoveBlockedByCalculation;
 	}
 
-	@Override
-	public void notifyOfThreadComplete(Thread thread) {
-		InterfaceSearchResult result = ((ThreadStrategy) thread).getResult();
+	private void onSearchComplete(Connect4Engine.Search thisSearch, InterfaceSearchResult result, Throwable failure) {
+		search = null; // Before performMove(), which may start the next one
+		if (failure != null) {
+			failure.printStackTrace();
+			isMoveBlockedByCalculation = false;
+			return;
+		}
+		InterfaceSearchContext context = thisSearch.getContext();
+		System.out.println("Move time:" + thisSearch.getSearchMillis() + " ms. Score: " + result.getBestScoreSoFar() + " Player: " + ((Connect4SearchContext) context).getOriginalPlayer());
 		// System.out.println("Best move(Applct): c "+bestMove.iC()+", r "+bestMove.iR());
 		int iR = result.getBestMoveSoFar().iR();
 		int iC = result.getBestMoveSoFar().iC();
 
-		thread.interrupt();
-
 		view.performMove(0, 0, iC, iR, 0); // 0 references is not used in this
 											// view
 
-		InterfaceSearchContext context = ((ThreadStrategy) thread).getContext();
 		if (((Connect4SearchContext) context).getOriginalPlayer() == 1) { // TODO:
 																			// fix
 																			// Connect4SearchContext
 																			// cast
+			Connect4SearchMetrics.METRICS.recordPreferedMinDepth(1, preferedMinDepthPlayer1, context.getMinDepthSearchForThisPos());
 			preferedMinDepthPlayer1 = context.getMinDepthSearchForThisPos();
 		} else {
+			Connect4SearchMetrics.METRICS.recordPreferedMinDepth(2, preferedMinDepthPlayer2, context.getMinDepthSearchForThisPos());
 			preferedMinDepthPlayer2 = context.getMinDepthSearchForThisPos();
 		}
 
@@ -0,0 +1,96 @@
+package c_minimax;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4Engine {
+    // Runs the searches of strategies on one long-lived thread, one search after the other
+    // The thread is made once, not once per move, so whatever a search leaves on its thread
+    //   (thread-local buffers, e.g., of Connect4RolloutBatch, and warm caches) is still there
+    //   for the next move, and starting a search costs no thread startup
+    // One thread also means a strategy is never searched by two threads at once: a search
+    //   submitted while another one runs (e.g., a ponder) starts once that one is over,
+    //   so stop that one first
+    // A search comes back as a Search: a CompletableFuture of its result that can be stopped
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Connect4Engine");
+        thread.setDaemon(true); // Does not keep the application alive
+        return thread;
+    });
+
+    Search search(InterfaceStrategy strategy, InterfacePosition position, InterfaceSearchContext context) {
+        return search(strategy, position, context, 0);
+    }
+
+    Search search(InterfaceStrategy strategy, InterfacePosition position, InterfaceSearchContext context, long minMoveMillis) {
+        // minMoveMillis is UI only: the result does not come sooner than this (0 for no delay)
+        Search search = new Search(context);
+        Connect4Position searchPosition = new Connect4Position(position); // The caller may go on changing its own
+        executor.execute(() -> search.run(strategy, searchPosition, minMoveMillis));
+        return search;
+    }
+
+    void afterSearches(Runnable task) { // Runs task on the engine thread once the searches already submitted are over
+        executor.execute(task);
+    }
+
+    void shutdown() { // Stops the thread once the searches already submitted are over
+        executor.shutdown();
+    }
+
+    static class Search extends CompletableFuture<InterfaceSearchResult> {
+        private final InterfaceSearchContext context;
+        private final Object lock = new Object();
+        private Thread thread = null; // The engine thread, while it runs this search
+        private volatile float searchMillis = 0;
+
+        private Search(InterfaceSearchContext context) {
+            this.context = context;
+        }
+
+        InterfaceSearchContext getContext() { return context;      }
+        float getSearchMillis()             { return searchMillis; } // Not counting the UI delay
+
+        void requestStop() {
+            // From any thread, at any time: the search stops and its best move so far is the result
+            // A search that has not started yet returns right away once it does
+            if (context instanceof Connect4SearchContext) ((Connect4SearchContext) context).abort(); // TODO: add to interface
+            synchronized (lock) {
+                if (thread != null) thread.interrupt(); // For a strategy that only polls Thread.isInterrupted()
+            }
+        }
+
+        private void run(InterfaceStrategy strategy, InterfacePosition position, long minMoveMillis) {
+            synchronized (lock) {
+                thread = Thread.currentThread();
+            }
+            InterfaceSearchResult result  = null;
+            Throwable             failure = null;
+            try {
+                long startTime = System.nanoTime();
+                result = strategy.getBestMove(position, context);
+                searchMillis = (System.nanoTime() - startTime) / 1000000.0f;
+                if (searchMillis < minMoveMillis && !Thread.currentThread().isInterrupted()) {
+                    try {
+                        Thread.sleep(minMoveMillis - (long) searchMillis);
+                    } catch (InterruptedException e) {
+                        // Stopped, so the move is wanted now
+                    }
+                }
+            } catch (Throwable e) { // Errors too (e.g., StackOverflowError): whoever waits on the result must hear of it
+                failure = e;
+            } finally {
+                synchronized (lock) {
+                    thread = null;
+                    Thread.interrupted(); // A stop must not reach the next search
+                }
+            }
+            if (failure != null) completeExceptionally(failure);
+            else                 complete(result);
+        }
+    }
+}
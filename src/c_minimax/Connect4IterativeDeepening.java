@@ -0,0 +1,73 @@
+package c_minimax;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4IterativeDeepening {
+    // Searches the root to depth 1, 2, 3, ... and returns the result of the deepest search that finished
+    // It stops once the result is final, the time is up, or the next iteration is not expected to finish
+    //   in time: an iteration costs about as many times more than the last one as the last one did
+    //   than the one before (the effective branching factor)
+    // Each iteration is seeded by the last: it gets the last result, so it can search that move first,
+    //   and whatever the last one left in a transposition table (e.g., hash moves) is still there
+    // With aspiration windows, an iteration first searches a narrow window around the last score.
+    //   If the score falls outside, that side of the window is opened up and it searches again.
+    // The depth reached is left in the context (getMinDepthSearchForThisPos), as it always was,
+    //   and goes to Connect4SearchMetrics along with whether the time ran out during an iteration
+
+    static final float ASPIRATION_WINDOW = 0.1f; // Half its width, scores are in [-1,1]
+
+    interface Iteration {
+        // One search of the root to depth (set in the context), within (alpha, beta)
+        // lastResult is the result of the last iteration, null for the first one
+        InterfaceSearchResult search( int depth, float alpha, float beta, InterfaceSearchResult lastResult );
+    }
+
+    static InterfaceSearchResult search( InterfaceSearchContext context, int nC, Iteration iteration, boolean isAspirated, String name ) {
+        // name is printed with the progress of each iteration (null for none)
+        InterfaceSearchResult bestResult = null;
+        int  depthReached      = 1;
+        long lastIterationTime = 0;
+        boolean isTimedOut     = false; // The time ran out in the middle of an iteration
+        for ( int depth = 1; bestResult == null || depth <= context.getMaxDepthSearchForThisPos(); depth++ ) {
+            long  iterationStart = System.nanoTime();
+            float alpha = Float.NEGATIVE_INFINITY;
+            float beta  = Float.POSITIVE_INFINITY;
+            if ( isAspirated && bestResult != null && Math.abs(bestResult.getBestScoreSoFar()) < 1f ) {
+                alpha = bestResult.getBestScoreSoFar() - ASPIRATION_WINDOW;
+                beta  = bestResult.getBestScoreSoFar() + ASPIRATION_WINDOW;
+            }
+            context.setMinDepthSearchForThisPos(depth);
+            InterfaceSearchResult result         = iteration.search(depth, alpha, beta, bestResult);
+            InterfaceSearchResult failHighResult = null; // Its move beats the last iteration's, even if the search that follows runs out of time
+            while ( !Connect4SearchClock.isOutOfTime(context) ) { // Even a final result is only a bound outside the window
+                float score = result.getBestScoreSoFar();
+                if      ( score <= alpha ) alpha = Float.NEGATIVE_INFINITY; // Failed low
+                else if ( score >= beta  ) { beta = Float.POSITIVE_INFINITY; failHighResult = result; } // Failed high
+                else break;
+                if ( name != null ) System.out.println(name+": depth "+depth+" fell outside the aspiration window ("+score+"), searching again");
+                result = iteration.search(depth, alpha, beta, bestResult);
+            }
+
+            if ( Connect4SearchClock.isOutOfTime(context) ) { // This iteration was cut short, so it is only used for lack of anything better
+                if      ( failHighResult != null ) bestResult = failHighResult;
+                else if ( bestResult     == null ) bestResult = result;
+                isTimedOut = true;
+                break;
+            }
+            bestResult   = result;
+            depthReached = depth;
+            long timeNow       = System.nanoTime();
+            long iterationTime = timeNow - iterationStart;
+            if ( name != null ) System.out.println(name+": depth "+depth+" score "+result.getBestScoreSoFar()+" in "+iterationTime/1000000+" ms");
+            if ( result.isResultFinal() ) break; // Deeper cannot change it
+
+            double branchingFactor = lastIterationTime > 0 ? Math.min( Math.max( (double) iterationTime/lastIterationTime, 2 ), nC ) : nC;
+            lastIterationTime = Math.max( iterationTime, 1 );
+            if ( context.getMaxSearchTimeForThisPos() - timeNow < iterationTime*branchingFactor ) break; // The next one would not finish
+        }
+        context.setMinDepthSearchForThisPos(depthReached);
+        if ( !((Connect4SearchContext) context).isCopy() ) // Helper threads of the same search do not count
+            Connect4SearchMetrics.METRICS.recordSearch(depthReached, isTimedOut);
+        return bestResult;
+    }
+}
@@ -0,0 +1,88 @@
+package c_minimax;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4MappedTable extends Connect4TranspositionTable {
+    // The same table as Connect4TranspositionTable, but its words live in a memory-mapped file
+    // so results survive restarts. There is no serialization: a lookup reads the longs
+    // straight out of the mapping, and the operating system pages the file in and out.
+    //
+    // File layout (all longs in native byte order):
+    //   HEADER_SIZE bytes: MAGIC, number of entries, 0, 0
+    //   then, for every entry: key, data (see Connect4TranspositionTable)
+
+    static final long MAGIC       = 0x4334545461626C33L; // "C4TTabl3": entries have a bound (tables before it have none)
+    static final int  HEADER_SIZE = 32;
+
+    private final MappedByteBuffer mapping;
+    private final LongBuffer       words;
+
+    private Connect4MappedTable( int nEntries, MappedByteBuffer mapping ) {
+        super( nEntries, false );
+        this.mapping = mapping;
+        ByteBuffer body = mapping.duplicate();
+        body.position(HEADER_SIZE);
+        words = body.slice().order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    static Connect4TranspositionTable open( File file, int sizeInMegabytes ) {
+        // Falls back to an in-memory table if the file cannot be mapped
+        int nEntries = getEntryCount( sizeInMegabytes, 1 << 26 ); // A single mapping is limited to 2GB
+        long fileSize = HEADER_SIZE + 16L*nEntries;
+        try ( RandomAccessFile raf = new RandomAccessFile(file, "rw") ) {
+            FileChannel channel = raf.getChannel();
+            boolean isResized = channel.size() != fileSize;
+            if ( isResized ) {
+                if ( channel.size() != 0 ) 
+                    System.out.println("Connect4MappedTable: "+file+" has a different size, so it is started over");
+                channel.truncate(0);
+                raf.setLength(fileSize); // Zero filled, i.e., every entry is empty
+            }
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            mapping.order(ByteOrder.nativeOrder());
+            boolean isForeign = !isResized && (mapping.getLong(0) != MAGIC || mapping.getLong(8) != nEntries);
+            Connect4MappedTable table = new Connect4MappedTable( nEntries, mapping );
+            if ( isForeign ) {
+                System.out.println("Connect4MappedTable: "+file+" is not a table of this layout, so it is started over");
+                table.clear();
+            }
+            if ( isResized || isForeign ) {
+                mapping.putLong(0, MAGIC   );
+                mapping.putLong(8, nEntries);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(table::force)); // The mapping stays valid after close
+            return table;
+        } catch (IOException e) {
+            System.err.println("Error(Connect4MappedTable::open): cannot map "+file+" ("+e.getMessage()+"). Using memory only.");
+            return new Connect4TranspositionTable( sizeInMegabytes );
+        }
+    }
+
+    @Override
+    protected long getWord( int iWord ) {
+        return words.get(iWord);
+    }
+
+    @Override
+    protected void setWord( int iWord, long word ) {
+        words.put(iWord, word);
+    }
+
+    @Override
+    void clear() {
+        for ( int iWord = 0; iWord < 2*getEntryCount(); iWord++ ) words.put(iWord, 0);
+    }
+
+    void force() { // Write any changed pages back to the file
+        mapping.force();
+    }
+}
@@ -0,0 +1,123 @@
+package c_minimax;
+
+import java.util.Arrays;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4MoveOrdering {
+    // Puts the columns of a node in the order a search should try them, best first:
+    //   1. the hash move (the best move the table has for this position)
+    //   2. moves that win right away, then moves that block an opponent's win
+    //   3. the killer moves of this ply (moves that caused a cutoff in a sibling)
+    //   4. the history heuristic (moves that caused cutoffs anywhere, by depth)
+    //   5. center first
+    // Each ply has its own buffer, reused from node to node, so nothing is allocated.
+    // Killers and history belong to one search thread: a parallel search gives every
+    //   worker its own Connect4MoveOrdering.
+
+    static final int NO_MOVE = -1;
+
+    private static final int HASH_MOVE = 1 << 30; // Priorities, added to the history score
+    private static final int WIN       = 1 << 29;
+    private static final int BLOCK     = 1 << 28;
+    private static final int KILLER    = 1 << 27;
+    private static final int MAX_HISTORY = 1 << 20; // History is halved once a score gets here
+
+    private final int     nC;
+    private final int     nR;
+    private final long    bottomRow;    // Lowest spot of every column
+    private final long    boardMask;    // Every spot on the board (the guard bits are left out)
+    private final long[]  columnMask;   // Every spot of column iC
+    private final int[]   centerWeight; // e.g., 0,1,2,3,2,1,0
+    private final int[][] plyMoves;     // Ordered columns of every ply
+    private final int[][] plyScores;
+    private final int[][] killers;      // Two per ply, the newest first
+    private final int[][] history;      // Per player, per bitboard spot
+
+    Connect4MoveOrdering( int nC, int nR ) {
+        this.nC = nC;
+        this.nR = nR;
+        columnMask   = new long[nC];
+        centerWeight = new int[nC];
+        long column  = (1L << nR) - 1;
+        long bottom  = 0;
+        long board   = 0;
+        for ( int iC = 0; iC < nC; iC++ ) {
+            columnMask[iC]   = column << (nR+1)*iC;
+            centerWeight[iC] = Math.min(iC, nC-1-iC);
+            bottom |= 1L << (nR+1)*iC;
+            board  |= columnMask[iC];
+        }
+        bottomRow = bottom;
+        boardMask = board;
+        int maxPly = nC*nR + 1;
+        plyMoves  = new int[maxPly][nC];
+        plyScores = new int[maxPly][nC];
+        killers   = new int[maxPly][2];
+        history   = new int[2][64];
+        clear();
+    }
+
+    void clear() { // Forget killers and history, e.g., for a new game
+        for ( int[] plyKillers : killers ) { plyKillers[0] = NO_MOVE; plyKillers[1] = NO_MOVE; }
+        for ( int[] playerHistory : history ) Arrays.fill(playerHistory, 0);
+    }
+
+    int[] getMoves( int ply ) { // The buffer orderMoves() fills
+        return plyMoves[ply];
+    }
+
+    int orderMoves( Connect4Position position, int ply, int hashColumn ) {
+        // Fills getMoves(ply) with the columns that are not full, best first, and returns how many
+        long occupied = position.getOccupiedBitboard();
+        int  player   = position.getPlayer();
+        long empty    = boardMask ^ occupied;
+        long legal    = (occupied + bottomRow) & boardMask;
+        long wins     = Connect4Position.getWinningSpots( position.getColorBitboard(player  ), empty, nR ) & legal;
+        long blocks   = Connect4Position.getWinningSpots( position.getColorBitboard(3-player), empty, nR ) & legal;
+        int[] moves   = plyMoves [ply];
+        int[] scores  = plyScores[ply];
+        int[] playerHistory = history[player-1];
+        int   nMoves  = 0;
+        for ( int iC = 0; iC < nC; iC++ ) {
+            long move = legal & columnMask[iC];
+            if ( move == 0 ) continue; // The column is full
+            int score = playerHistory[Long.numberOfTrailingZeros(move)]*nC + centerWeight[iC];
+            if      ( iC == hashColumn        ) score += HASH_MOVE;
+            if      ( (move & wins  ) != 0    ) score += WIN;
+            else if ( (move & blocks) != 0    ) score += BLOCK;
+            if      ( iC == killers[ply][0]   ) score += KILLER + 1;
+            else if ( iC == killers[ply][1]   ) score += KILLER;
+            int i = nMoves++; // Insertion sort, highest score first
+            for ( ; i > 0 && scores[i-1] < score; i-- ) {
+                moves [i] = moves [i-1];
+                scores[i] = scores[i-1];
+            }
+            moves [i] = iC;
+            scores[i] = score;
+        }
+        return nMoves;
+    }
+
+    void recordCutoff( Connect4Position position, int ply, int iC, int depthLeft ) {
+        // Column iC refuted the opponent's last move, depthLeft plies from the search horizon
+        if ( killers[ply][0] != iC ) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = iC;
+        }
+        long move = (position.getOccupiedBitboard() + bottomRow) & columnMask[iC];
+        if ( move == 0 ) return;
+        int[] playerHistory = history[position.getPlayer()-1];
+        int   spot          = Long.numberOfTrailingZeros(move);
+        playerHistory[spot] += depthLeft*depthLeft + 1;
+        if ( playerHistory[spot] >= MAX_HISTORY ) { // Age all of it, so that old cutoffs fade
+            for ( int i = 0; i < playerHistory.length; i++ ) playerHistory[i] >>= 1;
+        }
+    }
+
+    static int getColumn( int compacted, boolean isMirrored, int nC ) {
+        // The column of the best move in a getClassStateCompacted() result, see Connect4SearchResult
+        int iC = (compacted & 0xFF) % nC;
+        return isMirrored ? nC-1-iC : iC;
+    }
+}
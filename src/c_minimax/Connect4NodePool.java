@@ -0,0 +1,138 @@
+package c_minimax;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4NodePool {
+    // Nodes of a search tree, kept in parallel primitive arrays instead of one object per node
+    //   Everything is allocated once, by the memory cap, so the heap stays flat for a whole
+    //   game and the garbage collector has nothing to do while searching
+    // A node is an int index. The children of a node are allocated together, so a node
+    //   only needs the index of its first child and the number of children
+    // Allocation just bumps nUsed. Moving the root down the tree (setRoot) is O(1): the rest
+    //   of the old tree is simply no longer reachable. compact() then copies what is still
+    //   reachable from the root into a second set of arrays (a semi-space copy, breadth
+    //   first, as in Cheney's algorithm) and swaps the two, which frees everything else
+
+    static final int NONE           = -1;
+    static final int BYTES_PER_NODE = 2*(8+4+4+4+1+1+1); // Both semi-spaces
+
+    private final int capacity; // Nodes in each semi-space
+    private int       nUsed = 0;
+    private int       root  = NONE;
+
+    private long [] key;        // Key of the position at the node (see Connect4StrategyMCTS.getKey)
+    private int  [] visits;
+    private float[] wins;       // For the player who moved into the node: a win is 1, a draw 1/2
+    private int  [] firstChild; // NONE until the node is expanded
+    private byte [] nChildren;
+    private byte [] move;       // Bitboard index of the chip played to get to the node
+    private byte [] terminal;   // -1 if the game goes on, else the winner (0 for a draw)
+
+    private long [] keyTo; // The other semi-space, compact() copies into it
+    private int  [] visitsTo;
+    private float[] winsTo;
+    private int  [] firstChildTo;
+    private byte [] nChildrenTo;
+    private byte [] moveTo;
+    private byte [] terminalTo;
+
+    Connect4NodePool( int sizeInMegabytes ) {
+        capacity = (int) Math.min( ((long)sizeInMegabytes << 20) / BYTES_PER_NODE, Integer.MAX_VALUE - 8 );
+        key        = new long [capacity];  keyTo        = new long [capacity];
+        visits     = new int  [capacity];  visitsTo     = new int  [capacity];
+        wins       = new float[capacity];  winsTo       = new float[capacity];
+        firstChild = new int  [capacity];  firstChildTo = new int  [capacity];
+        nChildren  = new byte [capacity];  nChildrenTo  = new byte [capacity];
+        move       = new byte [capacity];  moveTo       = new byte [capacity];
+        terminal   = new byte [capacity];  terminalTo   = new byte [capacity];
+    }
+
+    int getCapacity() { return capacity; }
+    int getUsed()     { return nUsed;    }
+    int getRoot()     { return root;     }
+
+    void setRoot( int iNode ) { // O(1), whatever is not under iNode is dropped at the next compact()
+        root = iNode;
+    }
+
+    void clear() {
+        nUsed = 0;
+        root  = NONE;
+    }
+
+    int newRoot( long rootKey ) { // Drops the whole tree
+        clear();
+        root = allocate( 1 );
+        set( root, rootKey, 0, -1 );
+        return root;
+    }
+
+    int allocate( int n ) { // Index of the first of n new nodes, or NONE if the pool is full
+        if ( nUsed + n > capacity ) return NONE;
+        int iFirst = nUsed;
+        nUsed += n;
+        return iFirst;
+    }
+
+    void set( int iNode, long nodeKey, int moveBitIndex, int winner ) { // A new node
+        key       [iNode] = nodeKey;
+        visits    [iNode] = 0;
+        wins      [iNode] = 0;
+        firstChild[iNode] = NONE;
+        nChildren [iNode] = 0;
+        move      [iNode] = (byte) moveBitIndex;
+        terminal  [iNode] = (byte) winner;
+    }
+
+    void setChildren( int iNode, int iFirstChild, int n ) {
+        firstChild[iNode] = iFirstChild;
+        nChildren [iNode] = (byte) n;
+    }
+
+    void addResult( int iNode, float win ) {
+        visits[iNode]++;
+        wins  [iNode] += win;
+    }
+
+    long  getKey       ( int iNode ) { return key       [iNode]; }
+    int   getVisits    ( int iNode ) { return visits    [iNode]; }
+    float getWins      ( int iNode ) { return wins      [iNode]; }
+    int   getFirstChild( int iNode ) { return firstChild[iNode]; }
+    int   getChildCount( int iNode ) { return nChildren [iNode]; }
+    long  getMove      ( int iNode ) { return 1L << move[iNode]; }
+    int   getTerminal  ( int iNode ) { return terminal  [iNode]; }
+    boolean isExpanded ( int iNode ) { return firstChild[iNode] != NONE; }
+
+    void compact() { // Keep only the tree under the root, which becomes node 0
+        if ( root == NONE ) { clear(); return; }
+        int nCopied = 0;
+        copy( root, nCopied++ );
+        for ( int iScan = 0; iScan < nCopied; iScan++ ) { // Breadth first: children stay together
+            int iFirst = firstChildTo[iScan];
+            if ( iFirst == NONE ) continue;
+            int n = nChildrenTo[iScan];
+            firstChildTo[iScan] = nCopied;
+            for ( int iChild = 0; iChild < n; iChild++ ) copy( iFirst+iChild, nCopied++ );
+        }
+
+        long [] keySwap        = key;        key        = keyTo;        keyTo        = keySwap;
+        int  [] visitsSwap     = visits;     visits     = visitsTo;     visitsTo     = visitsSwap;
+        float[] winsSwap       = wins;       wins       = winsTo;       winsTo       = winsSwap;
+        int  [] firstChildSwap = firstChild; firstChild = firstChildTo; firstChildTo = firstChildSwap;
+        byte [] nChildrenSwap  = nChildren;  nChildren  = nChildrenTo;  nChildrenTo  = nChildrenSwap;
+        byte [] moveSwap       = move;       move       = moveTo;       moveTo       = moveSwap;
+        byte [] terminalSwap   = terminal;   terminal   = terminalTo;   terminalTo   = terminalSwap;
+        nUsed = nCopied;
+        root  = 0;
+    }
+
+    private void copy( int iFrom, int iTo ) { // From this semi-space into the other one
+        keyTo       [iTo] = key       [iFrom];
+        visitsTo    [iTo] = visits    [iFrom];
+        winsTo      [iTo] = wins      [iFrom];
+        firstChildTo[iTo] = firstChild[iFrom]; // Still an index in this semi-space, fixed by compact()
+        nChildrenTo [iTo] = nChildren [iFrom];
+        moveTo      [iTo] = move      [iFrom];
+        terminalTo  [iTo] = terminal  [iFrom];
+    }
+}
@@ -0,0 +1,116 @@
+package c_minimax;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.SortedMap;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4OpeningBook {
+    // Read-only results for the opening, made offline by Connect4BookGenerator
+    // The file is memory-mapped and looked up by binary search, so opening it costs
+    //   nothing and a lookup never allocates
+    // Keys are getCanonicalRawPosition(), so a position and its mirror image share an entry
+    //
+    // File layout (all big-endian, so a book can be copied between machines):
+    //   HEADER_SIZE bytes: MAGIC, number of entries, nC, nR
+    //   then the keys, sorted as signed longs
+    //   then, in the same order, the results (getClassStateCompacted() of the canonical position)
+
+    static final long MAGIC       = 0x4334426F6F6B3031L; // "C4Book01"
+    static final int  HEADER_SIZE = 32;
+
+    private final int        nEntries;
+    private final int        nC;
+    private final int        nR;
+    private final LongBuffer keys;
+    private final IntBuffer  results;
+
+    private Connect4OpeningBook() { // Empty
+        nEntries = 0;
+        nC       = 0;
+        nR       = 0;
+        keys     = null;
+        results  = null;
+    }
+
+    private Connect4OpeningBook( MappedByteBuffer mapping ) {
+        nEntries = (int) mapping.getLong( 8);
+        nC       = (int) mapping.getLong(16);
+        nR       = (int) mapping.getLong(24);
+        ByteBuffer body = mapping.duplicate();
+        body.position(HEADER_SIZE);
+        keys = body.slice().asLongBuffer();
+        body.position(HEADER_SIZE + 8*nEntries);
+        results = body.slice().asIntBuffer();
+    }
+
+    static Connect4OpeningBook empty() {
+        return new Connect4OpeningBook();
+    }
+
+    static Connect4OpeningBook open( File file ) {
+        // An empty book if there is no book file (or it cannot be read)
+        if ( !file.exists() ) return empty();
+        try ( RandomAccessFile raf = new RandomAccessFile(file, "r") ) {
+            FileChannel channel = raf.getChannel();
+            if ( channel.size() < HEADER_SIZE ) throw new IOException("too short");
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if ( mapping.getLong(0) != MAGIC ) throw new IOException("not a book");
+            if ( channel.size() != HEADER_SIZE + 12*mapping.getLong(8) ) throw new IOException("wrong size");
+            return new Connect4OpeningBook( mapping ); // The mapping stays valid after close
+        } catch (IOException e) {
+            System.err.println("Error(Connect4OpeningBook::open): cannot read "+file+" ("+e.getMessage()+"). No book is used.");
+            return empty();
+        }
+    }
+
+    int size() {
+        return nEntries;
+    }
+
+    boolean getResult( Connect4Position position, Connect4SearchResult searchResult ) {
+        // Fills in searchResult and returns true if the position is in the book
+        if ( nEntries == 0 || position.nC() != nC || position.nR() != nR ) return false;
+        long key   = position.getCanonicalRawPosition();
+        int  index = find(key);
+        if ( index < 0 ) return false;
+        searchResult.setClassStateFromCompacted( results.get(index), key != position.getRawPosition() );
+        searchResult.setIsResultFinal( Math.abs(searchResult.getBestScoreSoFar()) == 1f ); // Only a win or a loss is certain
+        return true;
+    }
+
+    private int find( long key ) { // Binary search, -1 if not there
+        int low  = 0;
+        int high = nEntries - 1;
+        while ( low <= high ) {
+            int  mid    = (low + high) >>> 1;
+            long midKey = keys.get(mid);
+            if      ( midKey < key ) low  = mid + 1;
+            else if ( midKey > key ) high = mid - 1;
+            else                     return mid;
+        }
+        return -1;
+    }
+
+    static void write( File file, int nC, int nR, SortedMap<Long,Integer> entries ) throws IOException {
+        // entries: canonical key -> compacted result, in signed key order (e.g., a TreeMap)
+        long fileSize = HEADER_SIZE + 12L*entries.size();
+        try ( RandomAccessFile raf = new RandomAccessFile(file, "rw") ) {
+            raf.setLength(0);
+            raf.setLength(fileSize);
+            MappedByteBuffer mapping = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            mapping.putLong(MAGIC).putLong(entries.size()).putLong(nC).putLong(nR);
+            for ( long key : entries.keySet() ) mapping.putLong(key);
+            for ( Map.Entry<Long,Integer> entry : entries.entrySet() ) mapping.putInt(entry.getValue());
+            mapping.force();
+        }
+    }
+}
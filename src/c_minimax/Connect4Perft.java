@@ -0,0 +1,161 @@
+package c_minimax;
+
+//author: Gary Kalmanovich; rights reserved
+
+public class Connect4Perft {
+    // Counts the positions reached after exactly depth moves from a start position (a game
+    //   that is won has no moves after that), in two ways:
+    //   - legacy:   as the strategies used to, through the packed long of Connect4Position: an
+    //               iterator over the columns, a copy and setColor() per move, and a win read back
+    //               with getColor() along the four lines through the new chip
+    //   - bitboard: makeMove()/unmakeMove() in place, and isWinner() on the bitboards
+    // The counts must agree, and the nodes per second of each is the raw speed of its move generation
+    // Before counting, validate() walks both in step and stops at the first position where they
+    //   disagree (position, legal moves, chip count or winner), so a new Connect4Position (or
+    //   anything else that has to act the same) can be checked against the legacy one
+    // From the empty board the counts are 7^depth, except that from depth 7 on some games are over
+    //   (e.g., depth 7 is 823536: seven chips in one column is no move)
+    //
+    // Usage: Connect4Perft [depth [start ...]]
+    //   start: columns played from the empty board, player 1 first (default: a small suite)
+
+    private static final String[] SUITE = {
+        "",
+        "3323",
+        "334332",
+        "22343354",
+        "3332224444", // A crowded center, so games end early
+    };
+
+    private long nodeCount = 0; // Moves made
+
+    public static void main(String[] args) {
+        int      depth  = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        String[] starts = SUITE;
+        if (args.length > 1) {
+            starts = new String[args.length-1];
+            System.arraycopy(args, 1, starts, 0, starts.length);
+        }
+
+        for (String moves : starts) {
+            Connect4Position position = Connect4Position.fromMoves(moves);
+            System.out.println("Start " + (moves.isEmpty() ? "(empty)" : moves) + ":");
+            validate(position, new Connect4Position(position), depth, new StringBuilder(moves));
+            System.out.printf("%6s%14s%14s%12s%12s%n", "depth", "bitboard", "legacy", "Mnodes/s", "Mnodes/s");
+            for (int iDepth = 1; iDepth <= depth; iDepth++) {
+                Connect4Perft bitboard = new Connect4Perft();
+                long startTime = System.nanoTime();
+                long leaves    = bitboard.perft(position, iDepth);
+                long bitboardTime = Math.max(System.nanoTime() - startTime, 1);
+
+                Connect4Perft legacy = new Connect4Perft();
+                startTime = System.nanoTime();
+                long legacyLeaves = legacy.perftLegacy(position, iDepth);
+                long legacyTime = Math.max(System.nanoTime() - startTime, 1);
+
+                System.out.printf("%6d%14d%14d%12.1f%12.1f%n", iDepth, leaves, legacyLeaves,
+                        1000.0 * bitboard.nodeCount / bitboardTime, 1000.0 * legacy.nodeCount / legacyTime);
+                if (leaves != legacyLeaves) {
+                    System.err.println("Error(Connect4Perft): the counts differ at depth " + iDepth);
+                    System.exit(1);
+                }
+            }
+        }
+    }
+
+    long perft(Connect4Position position, int depth) { // Bitboards, in place
+        if (depth == 0) return 1;
+        long leaves = 0;
+        int  player = position.getPlayer();
+        for (int iC = 0; iC < position.nC(); iC++) {
+            if ((position.getOccupiedBitboard() & 1L << (position.nR()+1)*iC+position.nR()-1) != 0) continue; // The column is full
+            position.makeMove(iC);
+            nodeCount++;
+            if (!Connect4Position.isFourInARow(position.getColorBitboard(player), position.nR()))
+                leaves += perft(position, depth-1);
+            else if (depth == 1)
+                leaves++; // The game ends here, and this is a leaf
+            position.unmakeMove();
+        }
+        return leaves;
+    }
+
+    long perftLegacy(InterfacePosition position, int depth) { // The packed long, a copy per move
+        if (depth == 0) return 1;
+        long leaves = 0;
+        int  player = position.getPlayer();
+        InterfaceIterator iPos = new Connect4Iterator(position.nC(), position.nR());
+        for (int iC = 0; iC < position.nC(); iC++) {
+            iPos.set(iC, 0);
+            int iR = position.nR() - position.getChipCount(iPos) - 1;
+            if (iR < 0) continue; // The column is full
+            iPos.set(iC, iR);
+            InterfacePosition child = new Connect4Position(position);
+            child.setColor(iPos, player);
+            child.setPlayer(3-player);
+            nodeCount++;
+            if (getLegacyWinner(child, iPos) < 0) leaves += perftLegacy(child, depth-1);
+            else if (depth == 1)                  leaves++;
+        }
+        return leaves;
+    }
+
+    static int getLegacyWinner(InterfacePosition position, InterfaceIterator iPos) {
+        // As the old isWinner(iPos): only getColor(), i.e., the packed long, along the lines through iPos
+        // The winner, 0 for a draw, -1 if the game goes on
+        int color = position.getColor(iPos);
+        int[][] directions = { {1,0}, {0,1}, {1,1}, {1,-1} }; // (iC,iR): horizontal, vertical, both diagonals
+        InterfaceIterator iNext = new Connect4Iterator(position.nC(), position.nR());
+        for (int[] direction : directions) {
+            int nInARow = 1;
+            for (int sign = -1; sign <= 1; sign += 2) { // Both ways from iPos
+                for (int iDelta = 1; iDelta < 4; iDelta++) {
+                    int iC = iPos.iC() + sign*iDelta*direction[0];
+                    int iR = iPos.iR() + sign*iDelta*direction[1];
+                    if (iC < 0 || iC >= position.nC() || iR < 0 || iR >= position.nR()) break;
+                    iNext.set(iC, iR);
+                    if (position.getColor(iNext) != color) break;
+                    nInARow++;
+                }
+            }
+            if (color != 0 && nInARow >= 4) return color;
+        }
+        return position.getChipCount() == position.nC()*position.nR() ? 0 : -1;
+    }
+
+    static void validate(Connect4Position position, InterfacePosition legacy, int depth, StringBuilder moves) {
+        // Walks both ways in step to depth, and exits at the first difference, printing the moves to it
+        if (position.getRawPosition() != legacy.getRawPosition()) fail(moves, "the packed longs differ");
+        if (position.getChipCount()   != legacy.getChipCount()  ) fail(moves, "the chip counts differ");
+        if (depth == 0) return;
+        int player = legacy.getPlayer();
+        InterfaceIterator iPos = new Connect4Iterator(legacy.nC(), legacy.nR());
+        for (int iC = 0; iC < legacy.nC(); iC++) {
+            iPos.set(iC, 0);
+            int iR = legacy.nR() - legacy.getChipCount(iPos) - 1;
+            if (iR < 0) { // The column is full
+                if (position.getChipCount(iPos) != legacy.nR()) fail(moves.append(iC), "the column is not full");
+                continue;
+            }
+            if (position.makeMove(iC) != iR) fail(moves.append(iC), "the move lands on another row");
+            iPos.set(iC, iR);
+            InterfacePosition child = new Connect4Position(legacy);
+            child.setColor(iPos, player);
+            child.setPlayer(3-player);
+            moves.append(iC);
+
+            int winner = getLegacyWinner(child, iPos);
+            if (position.isWinner(iPos) != winner) fail(moves, "isWinner(iPos) is " + position.isWinner(iPos) + ", not " + winner);
+            if (position.isWinner()     != winner) fail(moves, "isWinner() is "     + position.isWinner()     + ", not " + winner);
+            validate(position, child, winner < 0 ? depth-1 : 0, moves);
+
+            moves.setLength(moves.length()-1);
+            position.unmakeMove();
+        }
+    }
+
+    private static void fail(StringBuilder moves, String message) {
+        System.err.println("Error(Connect4Perft::validate): after " + (moves.length() == 0 ? "(empty)" : moves) + ", " + message);
+        System.exit(1);
+    }
+}
@@ -11,8 +11,21 @@ public class Connect4Position implements InterfacePosition {
     // Next, going to the left 42=6*7*1 bits are binary for colors. (Either red or yellow) 
     // Finally, the left most bit is for the player
     
+    // Alongside the packed long, two bitboards are kept for fast win detection.
+    // Bit (nR+1)*iC+iR_ (iR_ counted from the bottom) is set in occupied if that
+    // spot holds a chip, and also in yellow if that chip is yellow (color 2).
+
+    private static final int[] REVERSED_7_BITS = new int[1<<7]; // For mirroring a row of colors
+    static {
+        for ( int row = 0; row < (1<<7); row++ )
+            REVERSED_7_BITS[row] = Integer.reverse(row) >>> (32-7);
+    }
 
     private long position = 0;
+    private long occupied = 0;
+    private long yellow   = 0;
+    private int[] moveStack = null; // Columns played by makeMove(), so unmakeMove() can take them back
+    private int   nMoves    = 0;
     private int nC = 0;
     private int nR = 0;
 
@@ -26,6 +39,19 @@ public class Connect4Position implements InterfacePosition {
         position = pos.getRawPosition();
         nC       = pos.nC();
         nR       = pos.nR();
+        if ( pos instanceof Connect4Position ) {
+            occupied = ((Connect4Position)pos).occupied;
+            yellow   = ((Connect4Position)pos).yellow;
+        } else {
+            setBitboardsFromPosition();
+        }
+    }
+
+    static Connect4Position fromMoves( String moves ) { // A 7x6 board after columns played from the empty board, player 1 first
+        Connect4Position position = new Connect4Position( 7, 6 );
+        position.setPlayer( 1 );
+        for ( char move : moves.toCharArray() ) position.makeMove( move - '0' );
+        return position;
     }
 
     private int getColumnChipCount( InterfaceIterator iPos ) { // Number of chips in column iC
@@ -44,6 +70,22 @@ public class Connect4Position implements InterfacePosition {
         return position;
     }
 
+    long getMirroredRawPosition() { // The same position with column iC and column nC-1-iC swapped
+        long mirrored = position & (1L << 63); // Same player
+        for ( int iC = 0; iC < nC; iC++ ) { // Column sizes
+            mirrored |= ((position >>> 3*iC) & 7) << 3*(nC-1-iC);
+        }
+        for ( int iR_ = 0; iR_ < nR; iR_++ ) { // Colors, one row (7 bits) at a time
+            int row = (int)(position >>> 7*(3+iR_)) & 0x7F;
+            mirrored |= (long)(REVERSED_7_BITS[row] >>> (7-nC)) << 7*(3+iR_);
+        }
+        return mirrored;
+    }
+
+    long getCanonicalRawPosition() { // The smaller of the position and its mirror image, for keying caches
+        return Math.min( position, getMirroredRawPosition() );
+    }
+
     @Override
     public int getColor( InterfaceIterator iPos ) { // 0 if transparent, 1 if red, 2 if yellow
         int  iR_ = iPos.nR()-iPos.iR()-1; // This numbers the rows from the bottom up
@@ -67,6 +109,9 @@ public class Connect4Position implements InterfacePosition {
         } else {
             position += 1 << 3*iC; // Increment columnSize
             if (color==2) position |= 1L << 7*(3+iR_)+iC; // Now set the color (default is color==1)
+            long bit  = 1L << getBitIndex(iC,iR_);
+            occupied |= bit;
+            if (color==2) yellow |= bit;
         }
     }
 
@@ -75,102 +120,16 @@ public class Connect4Position implements InterfacePosition {
         //      if winner, determine that and return winner, 
         //      else if draw, return 0
         //      else if neither winner nor draw, return -1
-        InterfaceIterator bounds = new Connect4Iterator(nC,nR);
-        int nC = bounds.nC();
-        int nR = bounds.nR();
         int iC = iPos.iC();
         int iR = iPos.iR();
         int iR_= nR-iR-1; // iR_ are bottom up as opposed to the way it is displayed which is top down
 
-        int nColumnChipCount = getColumnChipCount( iC );
-
-        int color = getColor(iC,iR_,nColumnChipCount);
+        int color = getColor(iC,iR_,getColumnChipCount( iC ));
 
-        // Check diagonal down-left then up-right
-        int iDeltaA, iDeltaB;
-        for ( iDeltaA = 1; iDeltaA < 4; iDeltaA++ ) {
-            int iCnew  = iC -iDeltaA;
-            int iR_new = iR_-iDeltaA;
-            if(iCnew < 0 || iR_new < 0) {
-                break;
-            } else { // We are still inbounds
-                int color2 = getColor(iCnew,iR_new,getColumnChipCount( iCnew ));
-                if (color!=color2) break;
-            }
-        }
-        for ( iDeltaB = 1; iDeltaB < 5-iDeltaA; iDeltaB++) {
-            int iCnew  = iC +iDeltaB;
-            int iR_new = iR_+iDeltaB;
-            if(iCnew >= nC || iR_new >= nR) {
-                break;
-            } else { // We are still inbounds
-                int color2 = getColor(iCnew,iR_new,getColumnChipCount( iCnew ));
-                if (color!=color2) break;
-            }
-        }
-        if ( iDeltaA+iDeltaB == 5 ) 
-            return color; // We found a winner, so stop and return
-
-        // Check diagonal down-right then up-left
-        for ( iDeltaA = 1; iDeltaA < 4; iDeltaA++ ) {
-            int iCnew  = iC +iDeltaA;
-            int iR_new = iR_-iDeltaA;
-            if(iCnew >= nC || iR_new < 0) {
-                break;
-            } else { // We are still inbounds
-                int color2 = getColor(iCnew,iR_new,getColumnChipCount( iCnew ));
-                if (color!=color2) break;
-            }
-        }
-        for ( iDeltaB = 1; iDeltaB < 5-iDeltaA; iDeltaB++) {
-            int iCnew  = iC -iDeltaB;
-            int iR_new = iR_+iDeltaB;
-            if(iCnew < 0 || iR_new >= nR) {
-                break;
-            } else { // We are still inbounds
-                int color2 = getColor(iCnew,iR_new,getColumnChipCount( iCnew ));
-                if (color!=color2) break;
-            }
-        }
-        if ( iDeltaA+iDeltaB == 5 ) 
+        // Only the color that just moved can have completed a line
+        if ( color != 0 && isFourInARow( getColorBitboard(color), nR ) ) 
             return color; // We found a winner, so stop and return
 
-        // Check directly left, then right
-        for ( iDeltaA = 1; iDeltaA < 4; iDeltaA++ ) {
-            int iCnew  = iC -iDeltaA;
-            if(iCnew < 0) {
-                break;
-            } else { // We are still inbounds
-                int color2 = getColor(iCnew,iR_,getColumnChipCount( iCnew ));
-                if (color!=color2) break;
-            }
-        }
-        for ( iDeltaB = 1; iDeltaB < 5-iDeltaA; iDeltaB++) {
-            int iCnew  = iC +iDeltaB;
-            if(iCnew >= nC) {
-                break;
-            } else { // We are still inbounds
-                int color2 = getColor(iCnew,iR_,getColumnChipCount( iCnew ));
-                if (color!=color2) break;
-            }
-        }
-        if ( iDeltaA+iDeltaB == 5 ) 
-            return color; // We found a winner, so stop and return
-
-        // Check straight down
-        if ( iR_-3 >= 0 ) { // I.e., have to have enough chips below
-            boolean isWin = true;
-            for ( int iDelta = 1; iDelta < 4; iDelta++ ) {
-                int color2 = getColor(iC,iR_-iDelta,nColumnChipCount);
-                if (color2!=color) {
-                    isWin = false;
-                    break; // don't check any further
-                }
-            }
-            if ( isWin ) 
-                return color; // We found a winner, so stop and return
-        }
-
         // There are no winners yet. See if there is a tie
         if     (getChipCount()==nC*nR)   return          0; // Tie
         else                             return         -1;
@@ -181,82 +140,108 @@ public class Connect4Position implements InterfacePosition {
         //      if winner, determine that and return winner, 
         //      else if draw, return 0
         //      else if neither winner nor draw, return -1
-        boolean isFull = true;
-        InterfaceIterator bounds = new Connect4Iterator(nC,nR);
-        int nC = bounds.nC();
-        int nR = bounds.nR();
+        if ( isFourInARow( getColorBitboard(1), nR ) ) return 1;
+        if ( isFourInARow( getColorBitboard(2), nR ) ) return 2;
+
+        // There are no winners yet. See if there is a tie
+        if     (getChipCount()==nC*nR)   return          0; // Tie
+        else                             return         -1;
+    }
+
+    static boolean isFourInARow( long bitboard, int nR ) {
+        // Each direction is a shift in the bitboard: 1 is vertical, nR+1 is horizontal,
+        //   nR and nR+2 are the two diagonals. The always-empty bit on top of each column
+        //   keeps lines from wrapping around from one column into the next.
+        long pairs;
+        pairs = bitboard & (bitboard >>>  1    ); if ( (pairs & (pairs >>> 2       )) != 0 ) return true; // vertical
+        pairs = bitboard & (bitboard >>> (nR+1)); if ( (pairs & (pairs >>> 2*(nR+1))) != 0 ) return true; // horizontal
+        pairs = bitboard & (bitboard >>>  nR   ); if ( (pairs & (pairs >>> 2* nR   )) != 0 ) return true; // diagonal down-right
+        pairs = bitboard & (bitboard >>> (nR+2)); if ( (pairs & (pairs >>> 2*(nR+2))) != 0 ) return true; // diagonal up-right
+        return false;
+    }
+
+    static long getWinningSpots( long bitboard, long empty, int nR ) {
+        // The spots of empty that would complete four in a row of bitboard (e.g., threats)
+        // Same shifts as isFourInARow(), now looking for three out of four
+        long spots = (bitboard << 1) & (bitboard << 2) & (bitboard << 3); // vertical (only from below)
+        for ( int shift = nR; shift <= nR+2; shift++ ) { // diagonal down-right, horizontal, diagonal up-right
+            long pairs = (bitboard << shift) & (bitboard << 2*shift);
+            spots |= pairs & (bitboard <<  3*shift); // The three on one side
+            spots |= pairs & (bitboard >>>   shift); // Two on one side, one on the other
+            pairs = (bitboard >>> shift) & (bitboard >>> 2*shift);
+            spots |= pairs & (bitboard >>> 3*shift);
+            spots |= pairs & (bitboard <<    shift);
+        }
+        return spots & empty;
+    }
+
+    long getOccupiedBitboard() { // Every chip on the board
+        return occupied;
+    }
+
+    long getColorBitboard( int color ) { // Only the chips of color (1 if red, 2 if yellow)
+        return color == 2 ? yellow : occupied ^ yellow;
+    }
+
+    private int getBitIndex( int iC, int iR_ ) { // iR_ numbers the rows from the bottom up
+        return (nR+1)*iC+iR_;
+    }
+
+    private void setBitboardsFromPosition() {
+        occupied = 0;
+        yellow   = 0;
         for (     int iC =0; iC <nC; iC++ ) {
             int nColumnChipCount = getColumnChipCount( iC );
-            if (nColumnChipCount<nR) isFull = false;
-            for ( int iR_=0; iR_<nColumnChipCount; iR_++ ) { // iR_ are bottom up as opposed to the way it is displayed which is top down
-                int color = getColor(iC,iR_,nColumnChipCount);
-
-                // Check diagonal up-left
-                if ( iC >= 3 && iR_+3 < nR ) { // I.e., have to be at least in the fourth column and have enough space above
-                    boolean isWin = true;
-                    for ( int iDelta = 1; iDelta < 4; iDelta++ ) {
-                        int color2 = getColor(iC-iDelta,iR_+iDelta,getColumnChipCount( iC-iDelta ));
-                        if (color2!=color) {
-                            isWin = false;
-                            break; // don't check any further
-                        }
-                    }
-                    if ( isWin ) 
-                        return color; // We found a winner, so stop and return
-                }
-
-                // Check diagonal up-right
-                if ( iC+3 < nC && iR_+3 < nR ) { // I.e., have three more columns on right and have enough space above
-                    boolean isWin = true;
-                    for ( int iDelta = 1; iDelta < 4; iDelta++ ) {
-                        int color2 = getColor(iC+iDelta,iR_+iDelta,getColumnChipCount( iC+iDelta ));
-                        if (color2!=color) {
-                            isWin = false;
-                            break; // don't check any further
-                        }
-                    }
-                    if ( isWin ) 
-                        return color; // We found a winner, so stop and return
-                }
-
-                // Check directly right
-                if ( iC+3 < nC ) { // I.e., have three more columns on right
-                    boolean isWin = true;
-                    for ( int iDelta = 1; iDelta < 4; iDelta++ ) {
-                        int color2 = getColor(iC+iDelta,iR_,getColumnChipCount( iC+iDelta ));
-                        if (color2!=color) {
-                            isWin = false;
-                            break; // don't check any further
-                        }
-                    }
-                    if ( isWin ) 
-                        return color; // We found a winner, so stop and return
-                }
-
-                // Check straight up
-                if ( iR_+3 < nColumnChipCount ) { // I.e., have to have enough chips above
-                    boolean isWin = true;
-                    for ( int iDelta = 1; iDelta < 4; iDelta++ ) {
-                        int color2 = getColor(iC,iR_+iDelta,nColumnChipCount);
-                        if (color2!=color) {
-                            isWin = false;
-                            break; // don't check any further
-                        }
-                    }
-                    if ( isWin ) 
-                        return color; // We found a winner, so stop and return
-                }
+            for ( int iR_=0; iR_<nColumnChipCount; iR_++ ) {
+                long bit = 1L << getBitIndex(iC,iR_);
+                occupied |= bit;
+                if (getColor(iC,iR_,nColumnChipCount)==2) yellow |= bit;
             }
         }
-
-        // There are no winners yet. See if there is a tie
-        if     (isFull         )   return          0; // Tie
-        else                       return         -1;
     }
 
     @Override
     public void reset() {
         position = 0;
+        occupied = 0;
+        yellow   = 0;
+        nMoves   = 0;
+    }
+
+    @Override
+    public int makeMove( int iC ) { // The current player drops a chip in column iC, then it is the opponent's turn
+        int iR_ = getColumnChipCount( iC ); // This is the row (from the bottom up) the chip lands on
+        if ( iR_ >= nR ) {
+            System.err.println("Error: Column ("+iC+") is already full.");
+            return -1;
+        }
+        if ( moveStack == null ) moveStack = new int[nC*nR];
+        long bit  = 1L << getBitIndex(iC,iR_);
+        position += 1L << 3*iC; // Increment columnSize
+        occupied |= bit;
+        if ( getPlayer() == 2 ) {
+            position |= 1L << 7*(3+iR_)+iC;
+            yellow   |= bit;
+        }
+        position ^= 1L << 63; // Opponent's turn
+        moveStack[nMoves++] = iC;
+        return nR-iR_-1;
+    }
+
+    @Override
+    public void unmakeMove() {
+        if ( nMoves == 0 ) {
+            System.err.println("Error(Connect4Position::unmakeMove): there is no move to take back!!!");
+            return;
+        }
+        int  iC   = moveStack[--nMoves];
+        int  iR_  = getColumnChipCount( iC )-1;
+        long bit  = 1L << getBitIndex(iC,iR_);
+        position ^= 1L << 63; // Back to the player who made the move
+        position -= 1L << 3*iC; // Decrement columnSize
+        position &= ~(1L << 7*(3+iR_)+iC);
+        occupied &= ~bit;
+        yellow   &= ~bit;
     }
 
     @Override
@@ -278,9 +263,7 @@ public class Connect4Position implements InterfacePosition {
 
     @Override
     public int getChipCount() {
-        int chipCount = 0;
-        for ( int iC = 0; iC < nC(); iC++ ) chipCount += getColumnChipCount(iC);
-        return chipCount;
+        return Long.bitCount(occupied);
     }
 
     @Override
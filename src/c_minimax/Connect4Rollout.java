@@ -0,0 +1,93 @@
+package c_minimax;
+
+import java.util.SplittableRandom;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4Rollout {
+    // Plays random games to the end directly on the bitboards of Connect4Position
+    // (see Connect4Position for the layout). Nothing is allocated per game or per move:
+    //   - the legal moves are the next free spot of every column, (occupied+bottomRow)&boardMask
+    //   - only the stones of the player who just moved are checked for four in a row
+
+    private final int     nC;
+    private final int     nR;
+    private final long    bottomRow;     // Lowest spot of every column
+    private final long    boardMask;     // Every spot on the board (the guard bits are left out)
+    private final long[]  columnMask;    // Every spot of column iC
+    private final int[]   columnWeight;  // Relative chance of picking column iC
+    private final boolean isWeighted;
+    private SplittableRandom rand;
+
+    Connect4Rollout( int nC, int nR, SplittableRandom rand, boolean isCenterWeighted ) {
+        this.nC         = nC;
+        this.nR         = nR;
+        this.rand       = rand;
+        this.isWeighted = isCenterWeighted;
+        columnMask   = new long[nC];
+        columnWeight = new int[nC];
+        long column  = (1L << nR) - 1;
+        long bottom  = 0;
+        long board   = 0;
+        for ( int iC = 0; iC < nC; iC++ ) {
+            columnMask[iC]   = column << (nR+1)*iC;
+            columnWeight[iC] = isCenterWeighted ? Math.min(iC, nC-1-iC)+1 : 1; // e.g., 1,2,3,4,3,2,1
+            bottom |= 1L << (nR+1)*iC;
+            board  |= columnMask[iC];
+        }
+        bottomRow = bottom;
+        boardMask = board;
+    }
+
+    void setRandom( SplittableRandom rand ) {
+        this.rand = rand;
+    }
+
+    int playRandomlyUntilEnd( Connect4Position pos, int playerToMove ) {
+        return playRandomlyUntilEnd( pos.getOccupiedBitboard(), pos.getColorBitboard(playerToMove), playerToMove );
+    }
+
+    int playRandomlyUntilEnd( long occupied, long stonesToMove, int playerToMove ) {
+        // Returns the winner (1 or 2), or 0 for a draw
+        // The starting position must not be over yet
+        long stones = stonesToMove;
+        int  player = playerToMove;
+        while ( true ) {
+            long legalMoves = getLegalMoves( occupied );
+            if ( legalMoves == 0 ) return 0; // Board is full: draw
+            long move = isWeighted ? pickWeighted(legalMoves) : pickUniform(legalMoves);
+            stones   |= move;
+            occupied |= move;
+            if ( Connect4Position.isFourInARow( stones, nR ) ) return player;
+            stones = occupied ^ stones; // Now the opponent's stones
+            player = 3 - player;
+        }
+    }
+
+    long getLegalMoves( long occupied ) { // One bit for the next free spot of each column that is not full
+        return (occupied + bottomRow) & boardMask;
+    }
+
+    private long pickUniform( long legalMoves ) {
+        for ( int k = rand.nextInt(Long.bitCount(legalMoves)); k > 0; k-- ) {
+            legalMoves &= legalMoves - 1; // Drop the lowest legal move
+        }
+        return Long.lowestOneBit(legalMoves);
+    }
+
+    private long pickWeighted( long legalMoves ) {
+        int totalWeight = 0;
+        for ( int iC = 0; iC < nC; iC++ ) {
+            if ( (legalMoves & columnMask[iC]) != 0 ) totalWeight += columnWeight[iC];
+        }
+        int r = rand.nextInt(totalWeight);
+        for ( int iC = 0; iC < nC; iC++ ) {
+            long move = legalMoves & columnMask[iC];
+            if ( move != 0 ) {
+                r -= columnWeight[iC];
+                if ( r < 0 ) return move;
+            }
+        }
+        return Long.lowestOneBit(legalMoves); // Not reached
+    }
+}
@@ -0,0 +1,98 @@
+package c_minimax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4RolloutBatch {
+    // Plays many random games from one leaf, split into chunks that run on a ForkJoinPool
+    //   - chunk i always gets the i-th split() of a SplittableRandom seeded by the caller,
+    //     so which games are played depends only on the seed, not on the threads
+    //   - the counts of the chunks are simply added, so the merged result is the same
+    //     whatever order the chunks finish in
+    //   - every worker thread plays on its own Connect4Rollout, so nothing is allocated per game
+    // The counts come back packed in one long, COUNT_BITS bits each:
+    //   wins of player 1, then wins of player 2, then draws
+
+    static final int  CHUNK_SIZE = 64;
+    static final int  COUNT_BITS = 21; // Up to 2^21-1 games per batch
+    static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int                       nRollouts;
+    private final ForkJoinPool              pool;
+    private final ThreadLocal<Connect4Rollout> rollouts;
+
+    Connect4RolloutBatch( int nC, int nR, boolean isCenterWeighted, int nRollouts, ForkJoinPool pool ) {
+        this.nRollouts = Math.min( nRollouts, (int)COUNT_MASK );
+        this.pool      = pool;
+        rollouts       = ThreadLocal.withInitial( () -> new Connect4Rollout(nC, nR, null, isCenterWeighted) );
+    }
+
+    int getRolloutCount() {
+        return nRollouts;
+    }
+
+    long playRandomlyUntilEnd( Connect4Position pos, int playerToMove, long seed ) {
+        return playRandomlyUntilEnd( pos.getOccupiedBitboard(), pos.getColorBitboard(playerToMove), playerToMove, seed );
+    }
+
+    long playRandomlyUntilEnd( long occupied, long stonesToMove, int playerToMove, long seed ) {
+        // Returns the packed counts of nRollouts games (see above)
+        // The starting position must not be over yet
+        int nChunks = (nRollouts + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        SplittableRandom   root  = new SplittableRandom(seed);
+        SplittableRandom[] rands = new SplittableRandom[nChunks];
+        for ( int iChunk = 0; iChunk < nChunks; iChunk++ ) rands[iChunk] = root.split(); // In order, on this thread
+
+        if ( nChunks == 1 || pool == null || pool.getParallelism() == 1 ) {
+            long counts = 0;
+            for ( int iChunk = 0; iChunk < nChunks; iChunk++ ) {
+                counts += playChunk( occupied, stonesToMove, playerToMove, rands[iChunk], getChunkSize(iChunk) );
+            }
+            return counts;
+        }
+
+        List<ForkJoinTask<Long>> chunks = new ArrayList<ForkJoinTask<Long>>(nChunks);
+        for ( int iChunk = 0; iChunk < nChunks; iChunk++ ) {
+            SplittableRandom rand  = rands[iChunk];
+            int              games = getChunkSize(iChunk);
+            chunks.add( ForkJoinTask.adapt( () -> playChunk(occupied, stonesToMove, playerToMove, rand, games) ) );
+        }
+        if ( ForkJoinTask.inForkJoinPool() ) {
+            ForkJoinTask.invokeAll(chunks); // Already a worker (e.g., a parallel search): join in with the pool we are in
+        } else {
+            pool.invoke( ForkJoinTask.adapt( () -> { ForkJoinTask.invokeAll(chunks); } ) );
+        }
+        long counts = 0;
+        for ( ForkJoinTask<Long> chunk : chunks ) counts += chunk.join();
+        return counts;
+    }
+
+    private int getChunkSize( int iChunk ) {
+        return Math.min( CHUNK_SIZE, nRollouts - iChunk*CHUNK_SIZE );
+    }
+
+    private long playChunk( long occupied, long stonesToMove, int playerToMove, SplittableRandom rand, int games ) {
+        Connect4Rollout rollout = rollouts.get();
+        rollout.setRandom(rand);
+        long counts = 0;
+        for ( int i = 0; i < games; i++ ) {
+            int winner = rollout.playRandomlyUntilEnd( occupied, stonesToMove, playerToMove );
+            counts += 1L << COUNT_BITS * (winner == 0 ? 2 : winner-1);
+        }
+        Connect4SearchMetrics.METRICS.addRollouts( games );
+        return counts;
+    }
+
+    static int getWins( long counts, int player ) {
+        return (int)((counts >>> COUNT_BITS*(player-1)) & COUNT_MASK);
+    }
+
+    static int getDraws( long counts ) {
+        return (int)((counts >>> 2*COUNT_BITS) & COUNT_MASK);
+    }
+}
@@ -0,0 +1,62 @@
+package c_minimax;
+
+//author: Gary Kalmanovich; rights reserved
+
+public class Connect4SearchBenchmark {
+    // Counts the nodes Connect4StrategyB searches in each WindowMode, on a fixed suite of positions
+    // Every search goes to the same fixed depth with no time limit, starts from empty tables and
+    //   plays its rollouts from the same seed, so the counts are the same from run to run
+    //
+    // Usage: Connect4SearchBenchmark [depth]
+
+    private static final String[] SUITE = { // Columns played from the empty board, player 1 first
+        "",
+        "3",
+        "33",
+        "3323",
+        "3432",
+        "32344",
+        "334332",
+        "3324452",
+        "22343354",
+        "234432",
+    };
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        System.out.printf("%-14s", "position");
+        for (Connect4StrategyB.WindowMode mode : Connect4StrategyB.WindowMode.values()) System.out.printf("%12s", mode);
+        System.out.println();
+        long[] total = new long[Connect4StrategyB.WindowMode.values().length];
+        for (String moves : SUITE) {
+            System.out.printf("%-14s", moves.isEmpty() ? "(start)" : moves);
+            for (Connect4StrategyB.WindowMode mode : Connect4StrategyB.WindowMode.values()) {
+                long nodes = countNodes(moves, mode, depth);
+                total[mode.ordinal()] += nodes;
+                System.out.printf("%12d", nodes);
+            }
+            System.out.println();
+        }
+        System.out.printf("%-14s", "total");
+        for (long nodes : total) System.out.printf("%12d", nodes);
+        System.out.println();
+    }
+
+    private static long countNodes(String moves, Connect4StrategyB.WindowMode mode, int depth) {
+        Connect4Position position = Connect4Position.fromMoves(moves);
+        Connect4StrategyB strategy = new Connect4StrategyB();
+        strategy.rand = strategy.new FastRandomizer(1);
+        strategy.setWindowMode(mode);
+        strategy.setTables(new Connect4TranspositionTable(16), new Connect4TranspositionTable(64)); // Nothing carried over from the last search
+
+        Connect4SearchContext context = new Connect4SearchContext();
+        context.setOriginalPlayer(position.getPlayer());
+        context.setMaxSearchTimeForThisPos(Long.MAX_VALUE / 4);
+        context.setMinDepthSearchForThisPos(depth);
+        context.setMaxDepthSearchForThisPos(depth);
+        if (mode == Connect4StrategyB.WindowMode.MTDF) strategy.mtdf(position, context);
+        else strategy.alphaBeta(position, context, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
+        return strategy.nodeCount;
+    }
+}
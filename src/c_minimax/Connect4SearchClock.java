@@ -0,0 +1,43 @@
+package c_minimax;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4SearchClock {
+    // Tells a search thread when its time is up, without reading System.nanoTime() at every node
+    // The time is read once every nodesPerCheck nodes, and nodesPerCheck adapts so that this
+    //   happens about every CHECK_INTERVAL, however long a node takes (a node whose children
+    //   are rollouts takes far longer than one deep in the tree)
+    // Once the time is up, the search is aborted (Connect4SearchContext.abortSearch()). That is
+    //   a volatile flag, read at every node of every thread searching the context or a copy of
+    //   it, so the whole recursion unwinds at once and not just the loop that saw the time.
+    // An interrupt of the search thread aborts the search the same way (see Connect4Engine.Search.requestStop),
+    //   and so does going over the node limit of the context (counted at every time check)
+    // One clock per search thread: the node counts are not shared
+
+    static final long CHECK_INTERVAL      = 250000; // Nanoseconds, a quarter of a millisecond
+    static final int  MAX_NODES_PER_CHECK = 1 << 16;
+
+    private int  nodesPerCheck = 1;
+    private int  nodesLeft     = 1;
+    private long lastCheckTime = 0;
+
+    boolean isTimeUp( InterfaceSearchContext context ) { // Once per node: has this search been aborted?
+        Connect4SearchContext searchContext = (Connect4SearchContext) context; // TODO: add to interface
+        if ( --nodesLeft <= 0 ) {
+            long timeNow = System.nanoTime();
+            boolean isOverNodeLimit = searchContext.addNodes( nodesPerCheck ); // The nodes since the last check
+            Connect4SearchMetrics.METRICS.addNodes( nodesPerCheck );
+            if ( searchContext.getMaxSearchTimeForThisPos() - timeNow <= 0 || Thread.currentThread().isInterrupted() || isOverNodeLimit ) searchContext.abortSearch();
+            long sinceLastCheck = timeNow - lastCheckTime;
+            if      ( sinceLastCheck > CHECK_INTERVAL   ) nodesPerCheck = Math.max( nodesPerCheck/2, 1                   );
+            else if ( sinceLastCheck < CHECK_INTERVAL/2 ) nodesPerCheck = Math.min( nodesPerCheck*2, MAX_NODES_PER_CHECK );
+            lastCheckTime = timeNow;
+            nodesLeft     = nodesPerCheck;
+        }
+        return searchContext.isAborted();
+    }
+
+    static boolean isOutOfTime( InterfaceSearchContext context ) { // Reads the time right now, e.g., between iterations
+        return ((Connect4SearchContext) context).isAborted() || context.getMaxSearchTimeForThisPos() - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,201 @@
+package c_minimax;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4SearchMetrics implements Connect4SearchMetricsMBean {
+    // Counters of every Connect4 strategy, registered with the platform MBean server as
+    //   OBJECT_NAME (once first used, i.e., by the first search), so they can be watched live,
+    //   e.g., with jconsole
+    // The counters are LongAdders: every thread adds to its own cell, so the search threads
+    //   never contend on them, and only a read (from JMX) adds the cells up
+    // Where they are counted:
+    //   - nodes:    Connect4SearchClock and Connect4Solver, a batch at every time check
+    //   - rollouts: Connect4RolloutBatch, a batch per chunk, and Connect4StrategyMCTS
+    //   - probes, hits and stores: Connect4TranspositionTable (every table of every strategy)
+    //   - beta cutoffs: where a search stops trying moves, by the index of the move that did it
+    //   - depth reached and time-outs: Connect4IterativeDeepening, once per search
+    //   - prefered min depths: Connect4Control, after every move
+    // The rates per second are sampled every SAMPLE_MILLIS on a daemon thread, not when they are
+    //   read, so reading one changes nothing: any number of JMX readers see the same rates
+
+    static final String OBJECT_NAME    = "c_minimax:type=Connect4SearchMetrics";
+    static final int    N_MOVE_INDEXES = 8; // Cutoffs are counted by move index up to this, the last one counts the rest
+    static final long   SAMPLE_MILLIS  = 1000; // How often the rates per second are sampled
+
+    static final Connect4SearchMetrics METRICS = new Connect4SearchMetrics();
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(METRICS, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Error(Connect4SearchMetrics): not registered over JMX (" + e + ")");
+        }
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Connect4SearchMetrics");
+            thread.setDaemon(true); // Does not keep the application alive
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(METRICS::sampleRates, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private final LongAdder   nodes        = new LongAdder();
+    private final LongAdder   rollouts     = new LongAdder();
+    private final LongAdder   tableProbes  = new LongAdder();
+    private final LongAdder   tableHits    = new LongAdder();
+    private final LongAdder   tableStores  = new LongAdder();
+    private final LongAdder[] betaCutoffs  = new LongAdder[N_MOVE_INDEXES];
+    private final LongAdder   searches     = new LongAdder();
+    private final LongAdder   depthReached = new LongAdder(); // Of all searches
+    private final LongAdder   timeOuts     = new LongAdder();
+    private final LongAdder   minDepthIncreases = new LongAdder();
+    private final LongAdder   minDepthDecreases = new LongAdder();
+    private volatile int lastDepthReached         = 0;
+    private volatile int preferedMinDepthPlayer1  = 0;
+    private volatile int preferedMinDepthPlayer2  = 0;
+    private final Rate nodeRate    = new Rate(nodes);
+    private final Rate rolloutRate = new Rate(rollouts);
+
+    private Connect4SearchMetrics() {
+        for (int iMove = 0; iMove < N_MOVE_INDEXES; iMove++) betaCutoffs[iMove] = new LongAdder();
+    }
+
+    // Counting, from the search threads
+
+    void addNodes(long nNodes) {
+        nodes.add(nNodes);
+    }
+
+    void addRollouts(long nRollouts) {
+        rollouts.add(nRollouts);
+    }
+
+    void recordTableProbe(boolean isHit) {
+        tableProbes.increment();
+        if (isHit) tableHits.increment();
+    }
+
+    void recordTableStore() {
+        tableStores.increment();
+    }
+
+    void recordBetaCutoff(int iMove) { // iMove: index of the move in the order the moves were tried, from 0
+        betaCutoffs[Math.min(iMove, N_MOVE_INDEXES-1)].increment();
+    }
+
+    void recordSearch(int depth, boolean isTimedOut) { // Once per search, at its end
+        searches.increment();
+        depthReached.add(depth);
+        lastDepthReached = depth;
+        if (isTimedOut) timeOuts.increment();
+    }
+
+    void recordPreferedMinDepth(int player, int oldDepth, int newDepth) {
+        if      (newDepth > oldDepth) minDepthIncreases.increment();
+        else if (newDepth < oldDepth) minDepthDecreases.increment();
+        if (player == 1) preferedMinDepthPlayer1 = newDepth;
+        else             preferedMinDepthPlayer2 = newDepth;
+    }
+
+    private void sampleRates() { // On the sampler thread, every SAMPLE_MILLIS
+        nodeRate.sample();
+        rolloutRate.sample();
+    }
+
+    // Reading, over JMX
+
+    @Override public long   getNodes()               { return nodes.sum();                 }
+    @Override public double getNodesPerSecond()      { return nodeRate.getPerSecond();     }
+    @Override public long   getRollouts()            { return rollouts.sum();              }
+    @Override public double getRolloutsPerSecond()   { return rolloutRate.getPerSecond();  }
+    @Override public long   getTableProbes()         { return tableProbes.sum();           }
+    @Override public long   getTableHits()           { return tableHits.sum();             }
+    @Override public long   getTableStores()         { return tableStores.sum();           }
+    @Override public long   getSearches()            { return searches.sum();              }
+    @Override public int    getLastDepthReached()    { return lastDepthReached;            }
+    @Override public long   getTimeOuts()            { return timeOuts.sum();              }
+    @Override public int    getPreferedMinDepthPlayer1()    { return preferedMinDepthPlayer1;  }
+    @Override public int    getPreferedMinDepthPlayer2()    { return preferedMinDepthPlayer2;  }
+    @Override public long   getPreferedMinDepthIncreases()  { return minDepthIncreases.sum(); }
+    @Override public long   getPreferedMinDepthDecreases()  { return minDepthDecreases.sum(); }
+
+    @Override
+    public double getTableHitRate() {
+        long probes = tableProbes.sum();
+        return probes == 0 ? 0 : (double) tableHits.sum() / probes;
+    }
+
+    @Override
+    public long[] getBetaCutoffsByMoveIndex() {
+        long[] counts = new long[N_MOVE_INDEXES];
+        for (int iMove = 0; iMove < N_MOVE_INDEXES; iMove++) counts[iMove] = betaCutoffs[iMove].sum();
+        return counts;
+    }
+
+    @Override
+    public double getFirstMoveCutoffRate() {
+        long[] counts = getBetaCutoffsByMoveIndex();
+        long   total  = 0;
+        for (long count : counts) total += count;
+        return total == 0 ? 0 : (double) counts[0] / total;
+    }
+
+    @Override
+    public double getAverageDepthReached() {
+        long nSearches = searches.sum();
+        return nSearches == 0 ? 0 : (double) depthReached.sum() / nSearches;
+    }
+
+    @Override
+    public void reset() { // The counters only: a search going on now goes on counting
+        nodes.reset();
+        rollouts.reset();
+        tableProbes.reset();
+        tableHits.reset();
+        tableStores.reset();
+        for (LongAdder cutoffs : betaCutoffs) cutoffs.reset();
+        searches.reset();
+        depthReached.reset();
+        timeOuts.reset();
+        minDepthIncreases.reset();
+        minDepthDecreases.reset();
+        nodeRate.reset();
+        rolloutRate.reset();
+    }
+
+    private static class Rate { // Of a counter, per second, between its last two samples
+        private final LongAdder counter;
+        private long lastCount = 0; // At the last sample
+        private long lastTime  = System.nanoTime();
+        private volatile double perSecond = 0;
+
+        Rate(LongAdder counter) {
+            this.counter = counter;
+        }
+
+        double getPerSecond() {
+            return perSecond;
+        }
+
+        synchronized void sample() {
+            long count   = counter.sum();
+            long timeNow = System.nanoTime();
+            if (timeNow > lastTime) perSecond = Math.max((count - lastCount) * 1e9 / (timeNow - lastTime), 0); // Not below 0 after a reset() in between
+            lastCount = count;
+            lastTime  = timeNow;
+        }
+
+        synchronized void reset() {
+            lastCount = 0;
+            lastTime  = System.nanoTime();
+            perSecond = 0;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package c_minimax;
+
+//author: Gary Kalmanovich; rights reserved
+
+public interface Connect4SearchMetricsMBean {
+    // What the Connect4 strategies have done since the start (or the last reset()), over JMX
+    // See Connect4SearchMetrics for where each of these is counted
+
+    long   getNodes();
+    double getNodesPerSecond();    // Over the last sample period, the same for every reader
+    long   getRollouts();
+    double getRolloutsPerSecond(); // Over the last sample period, the same for every reader
+
+    long   getTableProbes();
+    long   getTableHits();
+    double getTableHitRate();
+    long   getTableStores();
+
+    long[] getBetaCutoffsByMoveIndex(); // The last one counts every move index from there on
+    double getFirstMoveCutoffRate();    // Of all cutoffs, e.g., how good the move ordering is
+
+    long   getSearches();
+    int    getLastDepthReached();
+    double getAverageDepthReached();
+    long   getTimeOuts();
+
+    int    getPreferedMinDepthPlayer1();
+    int    getPreferedMinDepthPlayer2();
+    long   getPreferedMinDepthIncreases();
+    long   getPreferedMinDepthDecreases();
+
+    void   reset();
+}
@@ -0,0 +1,196 @@
+package c_minimax;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4Solver {
+    // Exact win/draw/loss solver on the bitboards of Connect4Position
+    // It is a plain alpha-beta negamax with scores -1 (loss), 0 (draw) and 1 (win) for the
+    //   player to move, driven by two null-window searches: first "is it a win?", then
+    //   "is it at least a draw?". With only three scores, the windows are all narrow.
+    // What keeps the tree small:
+    //   - a move that wins right away ends the search at that node
+    //   - only moves that do not hand the opponent a win are searched, and a position
+    //     with two threats to stop is lost without any search
+    //   - moves are tried in order of how many winning spots they make, then center first
+    //   - bounds are kept in a Connect4TranspositionTable, from one search to the next
+    // A search stops (and solves nothing) once it runs past its time limit.
+
+    static final int UNKNOWN = Integer.MIN_VALUE; // Ran out of time
+
+    private static final int LOWER_BOUND = 1; // Kinds of table entries
+    private static final int UPPER_BOUND = 2;
+    private static final int EXACT       = 3;
+    private static final int NODES_PER_CHECK = 1 << 12; // Look at the clock this often
+
+    private final int    nC;
+    private final int    nR;
+    private final long   bottomRow;   // Lowest spot of every column
+    private final long   boardMask;   // Every spot on the board (the guard bits are left out)
+    private final long[] columnMask;  // Every spot of column iC
+    private final int[]  columnOrder; // Center first
+    private final long[][] plyMoves;  // Per ply buffers for move ordering, so nothing is allocated per node
+    private final int [][] plyScores;
+    private final Connect4TranspositionTable table;
+
+    private long    nodeCount = 0;
+    private long    maxTime;
+    private Connect4SearchContext context; // Its search may be aborted, null if only maxTime counts
+    private boolean isAborted;
+
+    Connect4Solver( int nC, int nR, int sizeInMegabytes ) {
+        this.nC = nC;
+        this.nR = nR;
+        columnMask  = new long[nC];
+        columnOrder = new int[nC];
+        long column = (1L << nR) - 1;
+        long bottom = 0;
+        long board  = 0;
+        for ( int iC = 0; iC < nC; iC++ ) {
+            columnMask[iC]  = column << (nR+1)*iC;
+            columnOrder[iC] = nC/2 + (1-2*(iC%2))*(iC+1)/2; // e.g., 3,2,4,1,5,0,6
+            bottom |= 1L << (nR+1)*iC;
+            board  |= columnMask[iC];
+        }
+        bottomRow = bottom;
+        boardMask = board;
+        plyMoves  = new long[nC*nR+1][nC];
+        plyScores = new int [nC*nR+1][nC];
+        table     = new Connect4TranspositionTable( sizeInMegabytes );
+    }
+
+    long getNodeCount() {
+        return nodeCount;
+    }
+
+    Connect4SearchResult getBestMove( Connect4Position position, long maxTime ) {
+        return getBestMove( position, maxTime, null );
+    }
+
+    Connect4SearchResult getBestMove( Connect4Position position, long maxTime, Connect4SearchContext context ) {
+        // The best move with its exact score (1, 0 or -1), or null if not solved by maxTime (System.nanoTime()),
+        //   nor if the search of context is aborted, nor if this thread is interrupted
+        this.maxTime   = maxTime;
+        this.context   = context;
+        this.isAborted = false;
+        long occupied  = position.getOccupiedBitboard();
+        long stones    = position.getColorBitboard( position.getPlayer() );
+        long legal     = (occupied + bottomRow) & boardMask;
+        long winning   = getWinningSpots( stones, occupied ) & legal;
+        long bestMove  = winning & -winning; // A move that wins right away, before any other is solved
+        int  bestScore = bestMove != 0 ? 1 : -2;
+        for ( int iOrder = 0; iOrder < nC && bestScore < 1; iOrder++ ) {
+            long move = legal & columnMask[columnOrder[iOrder]];
+            if ( move == 0 ) continue;
+            int score;
+            if      ( ((occupied|move) & boardMask) == boardMask ) score = 0; // The board is full
+            else                                                         score = -solve( occupied^stones, occupied|move );
+            if ( isAborted ) return null;
+            if ( score > bestScore ) {
+                bestScore = score;
+                bestMove  = move;
+            }
+        }
+        if ( bestMove == 0 ) return null; // No legal move
+
+        Connect4SearchResult searchResult = new Connect4SearchResult(); // isResultFinal() is true
+        InterfaceIterator iPos = new Connect4Iterator( nC, nR );
+        int iBit = Long.numberOfTrailingZeros( bestMove );
+        iPos.set( iBit/(nR+1), nR-1-iBit%(nR+1) ); // Bit index to (iC, top-down iR)
+        searchResult.setBestMoveSoFar( iPos, bestScore );
+        return searchResult;
+    }
+
+    int solve( long stones, long occupied ) {
+        // 1, 0 or -1 for the player to move (who has stones), or UNKNOWN if out of time
+        // The position must not be over yet
+        if ( (getWinningSpots(stones, occupied) & getLegalMoves(occupied)) != 0 ) return 1;
+        int score = negamax( stones, occupied, 0, 1 ) >= 1 ? 1       // Is it a win?
+                  : negamax( stones, occupied, -1, 0 ) >= 0 ? 0 : -1; // Else, is it at least a draw?
+        return isAborted ? UNKNOWN : score;
+    }
+
+    private int negamax( long stones, long occupied, int alpha, int beta ) {
+        // The player to move cannot win right away (the caller has checked)
+        if ( (++nodeCount & (NODES_PER_CHECK-1)) == 0 ) {
+            Connect4SearchMetrics.METRICS.addNodes( NODES_PER_CHECK );
+            if ( isStopped() ) isAborted = true;
+        }
+        if ( isAborted ) return 0;
+
+        long next = getNonLosingMoves( stones, occupied );
+        if ( next == 0 ) return -1; // Every move lets the opponent win
+        int nChips = Long.bitCount( occupied );
+        if ( nChips >= nC*nR - 2 ) return 0; // Neither player can win any more
+
+        int  originalAlpha = alpha; // Before the table narrows the window
+        long key  = stones + occupied + bottomRow; // Unique for every position
+        long data = table.get( key );
+        if ( data != Connect4TranspositionTable.NOT_FOUND ) {
+            int compacted = Connect4TranspositionTable.getCompacted( data );
+            int value     = (compacted & 0xFF) - 1;
+            int kind      =  compacted >>> 8;
+            if ( kind == EXACT                         ) return value;
+            if ( kind == LOWER_BOUND && value >= beta  ) return value;
+            if ( kind == UPPER_BOUND && value <= alpha ) return value;
+            if ( kind == LOWER_BOUND ) alpha = Math.max( alpha, value );
+            if ( kind == UPPER_BOUND ) beta  = Math.min( beta , value );
+            if ( alpha >= beta       ) return alpha;
+        }
+
+        long[] moves  = plyMoves [nChips];
+        int [] scores = plyScores[nChips];
+        int    nMoves = 0;
+        for ( int iOrder = 0; iOrder < nC; iOrder++ ) { // Insertion sort, most winning spots first
+            long move = next & columnMask[columnOrder[iOrder]];
+            if ( move == 0 ) continue;
+            int score = Long.bitCount( getWinningSpots(stones|move, occupied|move) );
+            int i = nMoves++;
+            for ( ; i > 0 && scores[i-1] < score; i-- ) {
+                moves [i] = moves [i-1];
+                scores[i] = scores[i-1];
+            }
+            moves [i] = move;
+            scores[i] = score;
+        }
+
+        int best = -1;
+        for ( int iMove = 0; iMove < nMoves; iMove++ ) {
+            long move  = moves[iMove];
+            int  score = -negamax( occupied^stones, occupied|move, -beta, -alpha ); // The opponent's turn
+            if ( score > best ) best = score;
+            if ( score > alpha ) alpha = score;
+            if ( alpha >= beta ) {
+                Connect4SearchMetrics.METRICS.recordBetaCutoff( iMove );
+                break;
+            }
+        }
+        if ( isAborted ) return 0;
+
+        int kind = best <= originalAlpha ? UPPER_BOUND : best >= beta ? LOWER_BOUND : EXACT;
+        table.put( key, (kind << 8) | (best+1), nC*nR - nChips ); // More empty spots, more work saved
+        return best;
+    }
+
+    private boolean isStopped() {
+        return System.nanoTime() - maxTime > 0 || (context != null && context.isAborted()) || Thread.currentThread().isInterrupted();
+    }
+
+    private long getLegalMoves( long occupied ) { // One bit for the next free spot of each column that is not full
+        return (occupied + bottomRow) & boardMask;
+    }
+
+    private long getNonLosingMoves( long stones, long occupied ) {
+        long legal    = getLegalMoves( occupied );
+        long threats  = getWinningSpots( occupied^stones, occupied ); // Where the opponent would win
+        long forced   = legal & threats;
+        if ( forced != 0 ) {
+            if ( (forced & (forced-1)) != 0 ) return 0; // Two threats cannot both be stopped
+            legal = forced;
+        }
+        return legal & ~(threats >>> 1); // Do not play right under an opponent's winning spot
+    }
+
+    private long getWinningSpots( long stones, long occupied ) { // Empty spots that would make four in a row
+        return Connect4Position.getWinningSpots( stones, boardMask ^ occupied, nR );
+    }
+}
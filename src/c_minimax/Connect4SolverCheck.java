@@ -0,0 +1,99 @@
+package c_minimax;
+
+//author: Gary Kalmanovich; rights reserved
+
+public class Connect4SolverCheck {
+    // Checks Connect4Solver against positions whose results are known:
+    //   - a few made by hand, where the result can be seen on the board
+    //   - the later positions of a few played games, each solved again by a plain negamax that
+    //     looks at every move to the end of the game (no table, no move ordering, nothing pruned
+    //     but the moves after a win), which is slow but cannot be wrong in the same way
+    // For each, the solver's score must be the known one, and its move must get that score
+    // Every position gets a new solver, so its nodes are all its own: going down the positions
+    //   of one game they shrink by about Connect4StrategyB.SOLVER_SHRINK_PER_CHIP per chip
+    //
+    // Usage: Connect4SolverCheck [minChips [moves ...]]
+    //   minChips: the positions of a game are checked from this many chips on (default 26,
+    //             about as early as the plain negamax finishes in seconds)
+    //   moves:    columns played from the empty board, player 1 first (default: a few games)
+
+    private static final String[][] KNOWN = { // Moves, then the score for the player to move
+        { "112233", "1"  }, // Three in the bottom row: it is completed
+        { "11223" , "-1" }, // Three in the bottom row, open at both ends: only one can be stopped
+        { "010102", "1"  }, // Three in a column: it is completed
+    };
+
+    private static final String[] GAMES = {
+        "03443334344130450222222060606611", // Played by Connect4StrategyB and Connect4StrategyDalen
+        "3333244344530124401111100605522",
+        "23333322232211111155555560444444",
+        "240421103251531541663336356046050254162420", // Random moves, to a full board: the end is a draw
+    };
+
+    private static final long MAX_TIME = 60_000_000_000L; // Nanoseconds per position, more than the solver needs
+
+    public static void main(String[] args) {
+        int      minChips = args.length > 0 ? Integer.parseInt(args[0]) : 26;
+        String[] games    = GAMES;
+        if (args.length > 1) {
+            games = new String[args.length-1];
+            System.arraycopy(args, 1, games, 0, games.length);
+        }
+
+        for (String[] known : KNOWN)
+            check(known[0], Integer.parseInt(known[1]));
+        for (String moves : games) {
+            for (int nChips = minChips; nChips < moves.length(); nChips++) {
+                Connect4Position position = Connect4Position.fromMoves(moves.substring(0, nChips));
+                if (position.isWinner() >= 0) break;
+                check(moves.substring(0, nChips), getScore(position));
+            }
+        }
+        System.out.println("All positions solved right");
+    }
+
+    static void check(String moves, int knownScore) {
+        Connect4Position position = Connect4Position.fromMoves(moves);
+        Connect4Solver   solver   = new Connect4Solver(position.nC(), position.nR(), 32);
+        long startTime = System.nanoTime();
+        Connect4SearchResult searchResult = solver.getBestMove(position, startTime + MAX_TIME);
+        System.out.printf("%-42s%4d%12d nodes%8d ms%n", moves.isEmpty() ? "(empty)" : moves, knownScore,
+                solver.getNodeCount(), (System.nanoTime() - startTime) / 1_000_000);
+        if (searchResult == null) fail(moves, "not solved in time");
+        int score = (int) searchResult.getBestScoreSoFar();
+        if (score != knownScore) fail(moves, "the score is " + score + ", not " + knownScore);
+
+        int player = position.getPlayer();
+        position.makeMove(searchResult.getBestMoveSoFar().iC());
+        int moveScore = position.isWinner() == player  ? 1
+                      : position.isWinner() == 0       ? 0
+                      : -getScore(position);
+        if (moveScore != knownScore) fail(moves, "the move " + searchResult.getBestMoveSoFar().iC() + " only gets " + moveScore);
+    }
+
+    static int getScore(Connect4Position position) {
+        // 1, 0 or -1 for the player to move, by looking at every move to the end of the game
+        // A move that wins right away is looked for first, so that a won position is not searched
+        // The position must not be over yet
+        int player    = position.getPlayer();
+        int bestScore = -1;
+        for (int iPass = 0; iPass < 2 && bestScore < 1; iPass++) { // First only wins, then all the rest
+            for (int iC = 0; iC < position.nC() && bestScore < 1; iC++) {
+                if ((position.getOccupiedBitboard() & 1L << (position.nR()+1)*iC+position.nR()-1) != 0) continue; // The column is full
+                position.makeMove(iC);
+                int winner = position.isWinner();
+                if (winner == player)
+                    bestScore = 1;
+                else if (iPass == 1)
+                    bestScore = Math.max(bestScore, winner == 0 ? 0 : -getScore(position));
+                position.unmakeMove();
+            }
+        }
+        return bestScore;
+    }
+
+    private static void fail(String moves, String message) {
+        System.err.println("Error(Connect4SolverCheck): after " + (moves.isEmpty() ? "(empty)" : moves) + ", " + message);
+        System.exit(1);
+    }
+}
@@ -1,21 +1,46 @@
 package c_minimax;
 
 import java.util.Random;
-import java.util.TreeMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
 //author: Gary Kalmanovich; rights reserved
 
 public class Connect4Strategy implements InterfaceStrategy {
-    TreeMap<Long,Integer> checkedPositions = new TreeMap<Long,Integer>(); // minor slowdown @16.7 million (try mapDB?)
+    Connect4TranspositionTable checkedPositions = new Connect4TranspositionTable(32); // Fixed size (in megabytes)
     Random rand = new Random(); // One can seed with a parameter variable here
+    Connect4Rollout rollout = null; // Random games are played on bitboards (made on first use)
+    Connect4RolloutBatch rollouts = null; // Leaves play their random games in parallel (made on first use)
+    ForkJoinPool rolloutPool = ForkJoinPool.commonPool(); // Where they are played, e.g., one with parallelism 1 plays them on this thread
+    Connect4SearchClock clock = new Connect4SearchClock();
+    static final int ROLLOUTS_PER_LEAF = 500;
+    int rootFirstColumn = -1; // Searched first at the root: the best move of the last iteration (-1 for none)
     
+    void setRolloutPool(ForkJoinPool rolloutPool) { // Before the first search
+        this.rolloutPool = rolloutPool;
+    }
+
     @Override
     public InterfaceSearchResult getBestMove(InterfacePosition position, InterfaceSearchContext context) {
-        InterfaceSearchResult searchResult = new Connect4SearchResult(); // Return information
+        // The search makes and unmakes moves on a single copy of the position
+        // It is deepened one ply at a time, see Connect4IterativeDeepening
+        // There are no alpha-beta bounds here, hence no aspiration windows
+        Connect4Position searchPosition = new Connect4Position(position);
+        return Connect4IterativeDeepening.search(context, position.nC(), (depth, alpha, beta, lastResult) -> {
+            rootFirstColumn = lastResult == null || lastResult.getBestMoveSoFar() == null ? -1 : lastResult.getBestMoveSoFar().iC();
+            return getBestMoveInPlace(searchPosition, context);
+        }, false, "Connect4Strategy");
+    }
 
-        Integer checkedResult = checkedPositions.get(position.getRawPosition());
-        if (checkedResult != null) {
-            searchResult.setClassStateFromCompacted(checkedResult);
+    private InterfaceSearchResult getBestMoveInPlace(Connect4Position position, InterfaceSearchContext context) {
+        Connect4SearchResult searchResult = new Connect4SearchResult(); // Return information
+
+        long    checkedKey    = position.getCanonicalRawPosition(); // Mirror images share one entry
+        boolean isMirrored    = checkedKey != position.getRawPosition();
+        long    checkedResult = checkedPositions.get(checkedKey);
+        if (checkedResult != Connect4TranspositionTable.NOT_FOUND) {
+            searchResult.setClassStateFromCompacted(Connect4TranspositionTable.getCompacted(checkedResult), isMirrored);
         } else { // position is not hashed, so let's see if we can process it
     
             int player   = position.getPlayer();
@@ -23,16 +48,20 @@ public class Connect4Strategy implements InterfaceStrategy {
 
             int  nRandom = rand.nextInt(position.nC());
             float uncertaintyPenalty = .01f;
+            InterfaceIterator iPos = new Connect4Iterator( position.nC(), position.nR() );
             
             for ( int iC_raw = 0; iC_raw < position.nC(); iC_raw++) {
                 int iC = (iC_raw+nRandom)% position.nC();
-                InterfacePosition posNew = new Connect4Position( position );
-                InterfaceIterator iPos   = new Connect4Iterator( position.nC(), position.nR() ); iPos.set(iC, 0);
-                int iR = position.nR() - posNew.getChipCount(iPos) - 1;                          iPos.set(iC,iR); 
+                if (context.getCurrentDepth()==0 && rootFirstColumn >= 0) { // Swap rootFirstColumn to the front
+                    if      (iC_raw == 0         ) iC = rootFirstColumn;
+                    else if (iC == rootFirstColumn) iC = nRandom;
+                }
+                iPos.set(iC, 0);
+                int iR = position.nR() - position.getChipCount(iPos) - 1; iPos.set(iC,iR); 
                 if (iR >= 0) { // The column is not yet full
                     if (searchResult.getBestMoveSoFar()==null) searchResult.setBestMoveSoFar(iPos, searchResult.getBestScoreSoFar());
-                    posNew.setColor(iPos, player);
-                    int isWin = posNew.isWinner( iPos ); // iPos
+                    position.makeMove(iC); // It is now the opponent's turn
+                    int isWin = position.isWinner( iPos ); // iPos
                     float score;
                     if        ( isWin ==   player ) { score =  1f;  // Win
                     } else if ( isWin ==        0 ) { score =  0f;  // Draw
@@ -40,9 +69,8 @@ public class Connect4Strategy implements InterfaceStrategy {
                     } else { // Game is not over, so check further down the game
                         if ( context.getCurrentDepth()   < context.getMaxDepthSearchForThisPos() &&     // No more than max
                              context.getCurrentDepth()   < context.getMinDepthSearchForThisPos()    ) { // No more than min
-                            posNew.setPlayer(opponent);
                             context.setCurrentDepth(context.getCurrentDepth()+1);
-                            InterfaceSearchResult opponentResult = getBestMove(posNew,context); // Return information is in opponentContext
+                            InterfaceSearchResult opponentResult = getBestMoveInPlace(position,context); // Return information is in opponentContext
                             context.setCurrentDepth(context.getCurrentDepth()-1);
                             score = -opponentResult.getBestScoreSoFar();
                             // Note, for player, opponent's best move has negative worth
@@ -55,48 +83,35 @@ public class Connect4Strategy implements InterfaceStrategy {
                         } else { 
                         	 // We cannot recurse further down the minimax search
                             // We cannot recurse further down the minimax search
-                        	//play n random boards, collect score
-                        	int numWin = 0;
-                        	int numLose = 0;
-                        	int numDraws = 0;
-                        	float total_plays = 10.0f; //change this if we ever want to play less or more
-                        	for (int i = 0; i < total_plays; i++) {
-                        		int winner = playRandomlyUntilEnd(posNew,player);
-                        		//ok, we have an end state.
-                        		if (winner == player) {
-                        			//we win!
-                        			numWin++;
-                        		} else if (winner == opponent) {
-                        			//we lose!
-                        			numLose++;
-                        		}else {
-                        			numDraws++;
-                        		}
-                        	}
+                        	//play a batch of random boards (the opponent moves first), collect score
+                        	if (rollouts == null) rollouts = new Connect4RolloutBatch(position.nC(), position.nR(), false, ROLLOUTS_PER_LEAF, rolloutPool);
+                        	long counts = rollouts.playRandomlyUntilEnd(position, opponent, rand.nextLong()); // Same rand, same score
+                        	int numWin   = Connect4RolloutBatch.getWins(counts, player);
+                        	int numLose  = Connect4RolloutBatch.getWins(counts, opponent);
+                        	int numDraws = Connect4RolloutBatch.getDraws(counts);
+                        	float total_plays = rollouts.getRolloutCount(); //change ROLLOUTS_PER_LEAF to play less or more
                             score = (numWin - numLose - numDraws) / total_plays;
 //                            score = -uncertaintyPenalty;
                             searchResult.setIsResultFinal(false);
                         }
                     }
+                    position.unmakeMove();
     
                     if (searchResult.getBestMoveSoFar()  == null ||
                     	searchResult.getBestScoreSoFar() <  score ) {
                         searchResult.setBestMoveSoFar(iPos, score );
-                        if ( score == 1f ) break; // No need to search further if one can definitely win
+                        if ( score == 1f ) { // No need to search further if one can definitely win
+                            Connect4SearchMetrics.METRICS.recordBetaCutoff(iC_raw);
+                            break;
+                        }
                     }
                 }
-                long timeNow = System.nanoTime();
-                if ( context.getMaxSearchTimeForThisPos() - timeNow <= 0 ) {
+                if ( clock.isTimeUp(context) ) {
 //                    System.out.println("Connect4Strategy:getBestMove(): ran out of time: maxTime("
 //                            +context.getMaxSearchTimeForThisPos()+") :time("
-//                            +timeNow+"): recDepth("+context.getCurrentDepth()+")");
-                    if (context.getCurrentDepth()==0) {
-                        // Revert back to a lesser search
-                        System.out.print("Connect4Strategy: Depth limit of "+context.getMinDepthSearchForThisPos()+" -> ");
-                        context.setMinDepthSearchForThisPos(context.getMinDepthSearchForThisPos()-1);
-                        System.out.println(context.getMinDepthSearchForThisPos());
-                    }
-                    if ( ((Connect4SearchContext)context).getOriginalPlayer() == opponent ) { // TODO: add to interface
+//                            +System.nanoTime()+"): recDepth("+context.getCurrentDepth()+")");
+                    if ( ((Connect4SearchContext)context).getOriginalPlayer() == opponent &&
+                         searchResult.getBestMoveSoFar() != null ) { // Not if every column tried so far was full. TODO: add to interface
                         searchResult.setBestMoveSoFar(searchResult.getBestMoveSoFar(), 0.95f); // Set to original opponent almost-win
                     }
                     searchResult.setIsResultFinal(false);
@@ -104,62 +119,22 @@ public class Connect4Strategy implements InterfaceStrategy {
                 }
             }
     
-            //if (searchResult.isResultFinal() && position.getChipCount()%3==1) // Hash this result
-            //    checkedPositions.put(position.getRawPosition(),searchResult.getClassStateCompacted());
+            if (searchResult.isResultFinal()) // Hash this result
+                checkedPositions.put(checkedKey,searchResult.getClassStateCompacted(isMirrored),
+                        context.getMinDepthSearchForThisPos()-context.getCurrentDepth());
 
         }
-        
-        //if we haven't run out of time yet, then increase the depth
-        long timeLeftInNanoSeconds = context.getMaxSearchTimeForThisPos() - System.nanoTime();
-        if (context.getCurrentDepth()== 0 && !searchResult.isResultFinal() && 
-                timeLeftInNanoSeconds > ((Connect4SearchContext)context).getOriginalTimeLimit()*9/10 ) { // TODO: add to interface
-            System.out.print("Connect4StrategyB: Depth limit of "+context.getMinDepthSearchForThisPos()+" -> ");
-            context.setMinDepthSearchForThisPos(context.getMinDepthSearchForThisPos()+1);
-            System.out.println(context.getMinDepthSearchForThisPos());
-            InterfaceSearchResult anotherResult = getBestMove(position,context);
-            if (anotherResult.getBestScoreSoFar() > searchResult.getBestScoreSoFar()) {
-                searchResult.setBestMoveSoFar(anotherResult.getBestMoveSoFar(), anotherResult.getBestScoreSoFar());
-                searchResult.setIsResultFinal(anotherResult.isResultFinal());
-            }
-        }
-        
+
         return searchResult;
     }
     public int playRandomlyUntilEnd(InterfacePosition pos, int player) {
     	//strategy for this code: while the position is not an ending position,
-    	//keep making random moves until someone wins, then return the score
-    	//the calling code calls this 100 times, and computes how many times are win
-    	//vs how many times are loss, over 100
-    	//draws are taken out of the equation
+    	//keep making random moves until someone wins, then return the winner (0 for a draw)
+    	//player has just moved, so the opponent moves first
     	//this should never be called starting from a position with no fillable spots
-    	int current_player = 3 - player;
-        InterfacePosition posNew = new Connect4Position( pos);
-    	while (posNew.isWinner() == -1) {
-    		//find a position that is playable by iterating through the columns
-    		boolean isFillable = false;
-    		int final_iC = -1;
-    		int final_iR = -1;
-            InterfaceIterator iPos   = new Connect4Iterator( posNew.nC(), posNew.nR() );
-    		while (!isFillable) {
-                int  nRandom = rand.nextInt(posNew.nC()); //generate random integer for column
-                iPos.set(nRandom, 0); //check the first row associated to the column
-                int iR = posNew.nR() - posNew.getChipCount(iPos) - 1; //see if the column isn't full           
-                iPos.set(nRandom,iR);
-                if (iR >= 0) {
-                	//it's fillable, so let's put something in it
-                	isFillable = true;
-                	final_iR = iR;
-                	final_iC = nRandom;
-                	break; //defensive programming
-                }
-    		}
-    		//we have a playable position, let's play it
-    		posNew.setPlayer(current_player);
-    		iPos.set(final_iC,final_iR);
-    		posNew.setColor(iPos, current_player);
-    		current_player = 3 - current_player;
-    	}
-    	return posNew.isWinner();
+        if (rollout == null) rollout = new Connect4Rollout(pos.nC(), pos.nR(), new SplittableRandom(rand.nextLong()), false);
+        Connect4Position posBits = pos instanceof Connect4Position ? (Connect4Position) pos : new Connect4Position(pos);
+        return rollout.playRandomlyUntilEnd(posBits, 3 - player);
     }
     
     @Override
@@ -177,11 +152,29 @@ public class Connect4Strategy implements InterfaceStrategy {
 class Connect4SearchContext implements InterfaceSearchContext {
     
     long timeLimit; // Original time limit
-    long maxTime;   // Cut off all calculations by this time (System.nanoTime())
+    volatile long maxTime; // Cut off all calculations by this time (System.nanoTime()), may be set by another thread
     int  minSearchDepth;
     int  maxSearchDepth;
     int    currentDepth;
     int  originalPlayer;
+    private final Connect4SearchContext original; // A copy also stops once its original is cut short
+    private volatile boolean isAborted = false; // See Connect4SearchClock
+    private long nodeLimit = Long.MAX_VALUE; // Of the whole search, in Connect4SearchClock nodes
+    private final AtomicLong nodeCount = new AtomicLong(); // Only that of the context the search started with counts
+
+    Connect4SearchContext() {
+        original = null;
+    }
+
+    Connect4SearchContext( Connect4SearchContext context ) { // A copy, e.g., for another search thread
+        timeLimit      = context.timeLimit;
+        maxTime        = context.maxTime;
+        minSearchDepth = context.minSearchDepth;
+        maxSearchDepth = context.maxSearchDepth;
+        currentDepth   = context.currentDepth;
+        originalPlayer = context.originalPlayer;
+        original       = context;
+    }
 
     @Override
     public int getCurrentDepth() {
@@ -216,13 +209,53 @@ class Connect4SearchContext implements InterfaceSearchContext {
     @Override
     public long getMaxSearchTimeForThisPos() {
         // Cut off all calculations by this time (System.nanoTime())
-        return maxTime;
+        if ( original == null ) return maxTime;
+        long originalMaxTime = original.getMaxSearchTimeForThisPos();
+        return originalMaxTime - maxTime < 0 ? originalMaxTime : maxTime;
     }
 
     @Override
     public void setMaxSearchTimeForThisPos(long timeLimit) {
         this.timeLimit =                        timeLimit;
         this.maxTime   = System.nanoTime()    + timeLimit;
+        this.isAborted = false;
+    }
+
+    void abort() { // Stops the search of this context and of every copy made of it
+        isAborted = true;
+    }
+
+    void abortSearch() { // Stops the whole search: the context it started with and every copy
+        Connect4SearchContext context = this;
+        while ( context.original != null ) context = context.original;
+        context.abort();
+    }
+
+    boolean isCopy() { // A copy of another context, e.g., the context of a helper thread
+        return original != null;
+    }
+
+    void setNodeLimit(long nodeLimit) { // A budget of nodes on top of the time limit, e.g., to play at a fixed strength
+        this.nodeLimit = nodeLimit;
+    }
+
+    boolean hasNodeLimit() { // Of the whole search, i.e., of the context it started with
+        Connect4SearchContext context = this;
+        while ( context.original != null ) context = context.original;
+        return context.nodeLimit != Long.MAX_VALUE;
+    }
+
+    boolean addNodes(long nNodes) { // Counts nodes of the whole search, true once it is over its node limit
+        Connect4SearchContext context = this;
+        while ( context.original != null ) context = context.original;
+        return context.nodeCount.addAndGet(nNodes) >= context.nodeLimit;
+    }
+
+    boolean isAborted() { // Aborted if this context or the one it was copied from was
+        for ( Connect4SearchContext context = this; context != null; context = context.original ) {
+            if ( context.isAborted ) return true;
+        }
+        return false;
     }
 
     //TODO: PUT THIS IN THE INTERFACE @Override
@@ -264,6 +297,23 @@ class Connect4SearchResult implements InterfaceSearchResult {
         bestScoreSoFar = (short)(newScore*(1<<14));
     }
 
+    int getClassStateCompacted( boolean isMirrored ) { // Stored under the mirror image, if isMirrored
+        if ( !isMirrored ) return getClassStateCompacted();
+        mirrorBestMoveSoFar();
+        int compacted = getClassStateCompacted();
+        mirrorBestMoveSoFar();
+        return compacted;
+    }
+
+    void setClassStateFromCompacted( int compacted, boolean isMirrored ) { // Stored under the mirror image, if isMirrored
+        setClassStateFromCompacted( compacted );
+        if ( isMirrored ) mirrorBestMoveSoFar();
+    }
+
+    private void mirrorBestMoveSoFar() { // Column iC <-> column nC-1-iC
+        bestMoveSoFar.set( bestMoveSoFar.nC()-1-bestMoveSoFar.iC(), bestMoveSoFar.iR() );
+    }
+
     @Override
     public int getClassStateCompacted() {
         int compacted = 0;
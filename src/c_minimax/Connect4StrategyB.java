@@ -1,21 +1,56 @@
 package c_minimax;
 
 import java.io.File;
-
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
-import org.mapdb.HTreeMap;
-import org.mapdb.Serializer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 //author: Gary Kalmanovich; rights reserved
 
 public class Connect4StrategyB implements InterfaceStrategy {
 
-	static DB db = DBMaker.newFileDB(new File("scores.db")).cacheSize(1000000).closeOnJvmShutdown().make();
-	static HTreeMap<Long, Integer> map = db.createHashMap("map").keySerializer(Serializer.LONG).valueSerializer(Serializer.INTEGER).makeOrGet();
+	enum SearchMode {
+		SERIAL, // One thread does the whole negamax
+		ROOT_PARALLEL, // Every root column is searched by its own worker
+		LAZY_SMP, // Helpers search the same root and share results only through the table
+		YBWC // Young Brothers Wait: siblings are split off once the first child is searched
+	}
+
+	enum WindowMode {
+		FULL, // Plain alpha-beta
+		PVS, // Principal variation search: moves after the first get a null window first
+		MTDF // MTD(f): the root is searched with null windows only, closing in on the score
+	}
+
+	static final int YBWC_SPLIT_DEPTH = 4; // Below this depth YBWC searches serially
+	static final float SCORE_EPSILON = 1f / (1 << 14); // Smallest score step of Connect4SearchResult
+	static final int MTDF_MAX_PASSES = 16; // Noisy leaf scores may never quite converge
+	static final int ROLLOUTS_PER_LEAF = 500; // Random games played from every leaf
+
+	// Final results are kept across runs in a memory-mapped file (size in megabytes), opened by the
+	// first search and then shared by every strategy that has no table of its own (see setTables)
+	static final String TABLE_FILE = "scores.c4t";
+	private static Connect4TranspositionTable fileMap = null;
+
+	// Opening results made offline by Connect4BookGenerator (empty if there is no book file),
+	// opened by the first search, unless one was put here before
+	static final String BOOK_FILE = "book.c4b";
+	static Connect4OpeningBook book = null;
+
+
+	// The tables of this strategy, shared (lock-free) with the workers of its parallel searches
+	Connect4TranspositionTable map = null; // Final results: fileMap, unless set before the first search
+	Connect4TranspositionTable searchTable = null; // Best moves of every searched node, final or not, for move ordering (made on first use)
 
 	FastRandomizer rand = new FastRandomizer(); // One can seed with a parameter
 												// variable here
+	Connect4Rollout rollout = null; // Random games are played on bitboards (made on first use)
+	Connect4RolloutBatch rollouts = null; // Leaves play their random games in parallel (made on first use)
+	Connect4MoveOrdering ordering = null; // Killers and history of this search thread (made on first use)
+	Connect4SearchClock clock = new Connect4SearchClock(); // Of this search thread
 	int[] probability_distribution = new int[] { 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 5, 5, 5, 5, 6, 6 };
 
 	// 1/16 for 0
@@ -28,210 +63,568 @@ public class Connect4StrategyB implements InterfaceStrategy {
 	// this is a center-based distribution, adds up to 1, we can use it to get
 	// better random games.
 
+	// From this many chips on, getBestMove first tries to solve the position outright,
+	// with half of its time. If that does not finish, the usual search gets the rest.
+	// A try is only made if the last one says it should finish in that time (see isSolverWorthTrying)
+	int solverChipThreshold = 16;
+	Connect4Solver solver = null; // Made on first use
+	static final double SOLVER_SHRINK_PER_CHIP = 3; // About how much smaller the solver's tree gets per chip played (see Connect4SolverCheck)
+	double solverNodesPerSecond = 0; // Of the last try, 0 before any
+	double solverNodesNeeded = 0; // Estimated for solverChipsNeeded chips, from the last try
+	int solverChipsNeeded = 0;
+	int solverFailures = 0; // Tries in a row that did not finish
+
+	WindowMode windowMode = WindowMode.FULL;
+	long nodeCount = 0; // Calls of alphaBeta, e.g., to compare window modes
+
+	private final SearchMode searchMode;
+	private final int nThreads;
+	private final ForkJoinPool pool; // null for SearchMode.SERIAL
+	private ForkJoinPool rolloutPool; // Where a leaf plays its rollouts outside of pool, e.g., one with parallelism 1 plays them on this thread
+	private AtomicInteger rootAlpha = null; // A worker of SearchMode.ROOT_PARALLEL: the best root score of all workers so far
+
+	Connect4StrategyB() {
+		this(SearchMode.SERIAL, 1);
+	}
+
+	Connect4StrategyB(SearchMode searchMode, int nThreads) {
+		this.searchMode = searchMode;
+		this.nThreads = nThreads;
+		this.pool = searchMode == SearchMode.SERIAL ? null : new ForkJoinPool(nThreads);
+		this.rolloutPool = pool != null ? pool : ForkJoinPool.commonPool();
+	}
+
+	private Connect4StrategyB(long seed, Connect4StrategyB parent) { // A serial worker of a parallel search
+		this();
+		rand = new FastRandomizer(seed);
+		rollouts = parent.rollouts;
+		windowMode = parent.windowMode;
+		map = parent.map;
+		searchTable = parent.searchTable;
+	}
+
+	void setWindowMode(WindowMode windowMode) {
+		this.windowMode = windowMode;
+	}
+
+	void close() { // Its search pool ends its threads once the searches in it are over (the strategy is not used again)
+		if (pool != null)
+			pool.shutdown();
+	}
+
+	void setRolloutPool(ForkJoinPool rolloutPool) { // Before the first search
+		this.rolloutPool = rolloutPool;
+	}
+
+	void setSolverChipThreshold(int solverChipThreshold) { // More than nC*nR turns the solver off
+		this.solverChipThreshold = solverChipThreshold;
+	}
+
+	boolean isSolverWorthTrying(int nChips, long solverTime) {
+		// Whether the nodes the solver is estimated to need now fit in what it can do in solverTime
+		// (nanoseconds). The estimate starts from the last try, and gets smaller with every chip since
+		if (solverNodesPerSecond == 0)
+			return true; // No try yet, so no estimate
+		double nodesNeeded = solverNodesNeeded / Math.pow(SOLVER_SHRINK_PER_CHIP, nChips - solverChipsNeeded);
+		return nodesNeeded <= solverNodesPerSecond * solverTime / 1e9;
+	}
+
+	void recordSolverTry(int nChips, long nodes, long time, boolean isSolved) {
+		// A try that finished needed its nodes. One that did not needed more, so it is taken to have
+		// been three chips too early, and every further try in a row that does not finish adds two
+		// more: as the time of a move stays about the same, the solver is then left out of the next
+		// move, then of the next two, and so on
+		solverNodesPerSecond = Math.max(nodes, 1) * 1e9 / Math.max(time, 1);
+		solverFailures = isSolved ? 0 : solverFailures + 1;
+		solverNodesNeeded = nodes * (isSolved ? 1 : Math.pow(SOLVER_SHRINK_PER_CHIP, 2 * solverFailures + 1));
+		solverChipsNeeded = nChips;
+	}
+
+	void setTables(Connect4TranspositionTable map, Connect4TranspositionTable searchTable) { // Before the first search, e.g., new ones in memory
+		this.map = map;
+		this.searchTable = searchTable;
+	}
+
+	private void openTables() {
+		if (map == null)
+			map = getFileMap();
+		if (searchTable == null)
+			searchTable = new Connect4TranspositionTable(64);
+	}
+
+	private static synchronized Connect4OpeningBook getBook() {
+		if (book == null)
+			book = Connect4OpeningBook.open(new File(BOOK_FILE));
+		return book;
+	}
+
+	private static synchronized Connect4TranspositionTable getFileMap() { // Opened once, even if both players search at the same time
+		if (fileMap == null)
+			fileMap = Connect4MappedTable.open(new File(TABLE_FILE), 256);
+		return fileMap;
+	}
+
+	private Connect4MoveOrdering getOrdering(InterfacePosition pos) {
+		if (ordering == null)
+			ordering = new Connect4MoveOrdering(pos.nC(), pos.nR());
+		return ordering;
+	}
+
+	private int getHashColumn(Connect4Position position, long key, boolean isMirrored) {
+		// The best move the last search of this position found, or NO_MOVE
+		long s = searchTable.get(key);
+		if (s == Connect4TranspositionTable.NOT_FOUND)
+			return Connect4MoveOrdering.NO_MOVE;
+		return Connect4MoveOrdering.getColumn(Connect4TranspositionTable.getCompacted(s), isMirrored, position.nC());
+	}
+
+	private Connect4RolloutBatch getRollouts(InterfacePosition pos) {
+		if (rollouts == null) // A serial search still spreads its leaves over all cores
+			rollouts = new Connect4RolloutBatch(pos.nC(), pos.nR(), true, ROLLOUTS_PER_LEAF, rolloutPool);
+		return rollouts;
+	}
+
 	@Override
 	public InterfaceSearchResult getBestMove(InterfacePosition position, InterfaceSearchContext context) {
-		InterfaceSearchResult isr = negamax(position, context, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
-		db.commit();
-		return isr;
+		// The search makes and unmakes moves on a single copy of the position
+		openTables();
+		Connect4Position searchPosition = new Connect4Position(position);
+		Connect4SearchResult bookResult = new Connect4SearchResult();
+		if (getBook().getResult(searchPosition, bookResult)) {
+			if (bookResult.isResultFinal())
+				return bookResult; // A win or a loss, known from the book, so nothing to search
+			// Only as good as the search that made the book, so it is searched again, its move first:
+			// a hash move of depth 0 is never a cutoff (and a deeper entry already there is kept)
+			long key = searchPosition.getCanonicalRawPosition();
+			if (searchTable.get(key) == Connect4TranspositionTable.NOT_FOUND)
+				searchTable.put(key, bookResult.getClassStateCompacted(key != searchPosition.getRawPosition()), 0, Connect4TranspositionTable.EXACT);
+		}
+		long timeNow = System.nanoTime();
+		long solverTime = (context.getMaxSearchTimeForThisPos() - timeNow) / 2;
+		// Not under a node limit: the solver does not count its nodes, which are not worth those of the
+		// search anyway, and half the time would be far more than the budget (e.g., in Connect4Arena)
+		if (!((Connect4SearchContext) context).hasNodeLimit()
+				&& searchPosition.getChipCount() >= solverChipThreshold && isSolverWorthTrying(searchPosition.getChipCount(), solverTime)) {
+			if (solver == null)
+				solver = new Connect4Solver(position.nC(), position.nR(), 32);
+			long nodeCountBefore = solver.getNodeCount();
+			Connect4SearchResult solvedResult = solver.getBestMove(searchPosition, timeNow + solverTime, (Connect4SearchContext) context);
+			if (!((Connect4SearchContext) context).isAborted()) // Else it was stopped, and says nothing about the solver
+				recordSolverTry(searchPosition.getChipCount(), solver.getNodeCount() - nodeCountBefore, System.nanoTime() - timeNow, solvedResult != null);
+			if (solvedResult != null)
+				return solvedResult; // Exact, so isResultFinal() is true
+		}
+		getRollouts(position); // Made before any worker, so that they all share it
+		if (searchMode == SearchMode.LAZY_SMP)
+			return negamaxLazySmp(searchPosition, context);
+		return deepen(searchPosition, context, "Connect4StrategyB");
+	}
+
+	private InterfaceSearchResult deepen(Connect4Position position, InterfaceSearchContext context, String name) {
+		// Iterative deepening of the root. Every iteration finds the best moves of the last
+		// one in searchTable and tries them first. MTD(f) makes its own windows.
+		Connect4IterativeDeepening.Iteration iteration;
+		if (searchMode == SearchMode.ROOT_PARALLEL || searchMode == SearchMode.YBWC)
+			iteration = (depth, alpha, beta, lastResult) -> negamaxParallel(position, context, alpha, beta);
+		else
+			iteration = (depth, alpha, beta, lastResult) -> negamax(position, context, alpha, beta);
+		return Connect4IterativeDeepening.search(context, position.nC(), iteration, windowMode != WindowMode.MTDF, name);
 	}
 
-	public InterfaceSearchResult negamax(InterfacePosition position, InterfaceSearchContext context, float alpha, float beta) {
-		InterfaceSearchResult searchResult = new Connect4SearchResult(); // Return
-																			// information
-		Integer s = map.get(position.getRawPosition());
-		if (s != null) {
-			searchResult.setClassStateFromCompacted(s);
+	private InterfaceSearchResult negamaxLazySmp(Connect4Position position, InterfaceSearchContext context) {
+		// nThreads-1 helpers deepen the same root while this thread does the usual
+		// search. Every other helper stays one ply deeper, and each has its own
+		// randomizer, hence its own move order. They never talk to each other
+		// directly: whatever one of them stores in the tables (map, searchTable) is
+		// found there by the others. Once this thread has its answer, the helpers are stopped.
+		List<Connect4SearchContext> helperContexts = new ArrayList<Connect4SearchContext>();
+		List<ForkJoinTask<InterfaceSearchResult>> helpers = new ArrayList<ForkJoinTask<InterfaceSearchResult>>();
+		for (int iHelper = 1; iHelper < nThreads; iHelper++) {
+			Connect4Position helperPosition = new Connect4Position(position);
+			Connect4SearchContext helperContext = new Connect4SearchContext((Connect4SearchContext) context);
+			Connect4StrategyB helper = new Connect4StrategyB(rand.nextLong(), this);
+			int depthOffset = iHelper % 2;
+			helperContexts.add(helperContext);
+			helpers.add(pool.submit(() -> Connect4IterativeDeepening.search(helperContext, position.nC(), (depth, alpha, beta, lastResult) -> {
+				helperContext.setMinDepthSearchForThisPos(depth + depthOffset);
+				return helper.negamax(helperPosition, helperContext, alpha, beta);
+			}, helper.windowMode != WindowMode.MTDF, null)));
+		}
+		InterfaceSearchResult searchResult = deepen(position, context, "Connect4StrategyB");
+		for (Connect4SearchContext helperContext : helperContexts)
+			helperContext.abort(); // Unwinds at the next node
+		for (ForkJoinTask<InterfaceSearchResult> helper : helpers)
+			helper.join();
+		return searchResult;
+	}
+
+	private InterfaceSearchResult negamaxParallel(Connect4Position position, InterfaceSearchContext context, float alpha, float beta) {
+		// One parallel search of the root, to the depth of context
+		if (searchMode == SearchMode.YBWC) {
+			YbwcContext rootContext = new YbwcContext(context);
+			return pool.invoke(ForkJoinTask.adapt(() -> negamaxYbwc(position, rootContext, alpha, beta)));
+		}
+		return negamaxRootParallel(position, context, alpha, beta);
+	}
+
+	private InterfaceSearchResult negamaxRootParallel(Connect4Position position, InterfaceSearchContext context, float alpha, float beta) {
+		// Each root column is scored in the pool by a worker with its own position,
+		// context, randomizer and rollout engine. The workers share the best root
+		// score found so far, which is the alpha bound for any worker that starts later.
+		// As all of them may start at once, a worker also reads it again after every
+		// move of its root child (see alphaBeta), so a better root move found meanwhile
+		// still cuts its search short.
+		Connect4SearchResult searchResult = new Connect4SearchResult(); // Return
+																		// information
+		AtomicInteger sharedAlpha = new AtomicInteger(Float.floatToIntBits(alpha));
+		List<ForkJoinTask<InterfaceSearchResult>> tasks = new ArrayList<ForkJoinTask<InterfaceSearchResult>>();
+		for (int iC = 0; iC < position.nC(); iC++) {
+			InterfaceIterator iPos = new Connect4Iterator(position.nC(), position.nR());
+			iPos.set(iC, 0);
+			int iR = position.nR() - position.getChipCount(iPos) - 1;
+			iPos.set(iC, iR);
+			if (iR >= 0) { // The column is not yet full
+				Connect4Position workerPosition = new Connect4Position(position);
+				Connect4SearchContext workerContext = new Connect4SearchContext((Connect4SearchContext) context);
+				Connect4StrategyB worker = new Connect4StrategyB(rand.nextLong(), this);
+				worker.rootAlpha = sharedAlpha;
+				tasks.add(pool.submit(() -> {
+					InterfaceSearchResult workerResult = new Connect4SearchResult();
+					float workerAlpha = Float.intBitsToFloat(sharedAlpha.get());
+					float score = worker.scoreMove(workerPosition, workerContext, iPos, workerAlpha, beta, workerResult);
+					if (workerContext.isAborted()) { // Out of time, so the score means nothing
+						workerResult.setBestMoveSoFar(iPos, workerResult.getBestScoreSoFar());
+						workerResult.setIsResultFinal(false);
+						return workerResult;
+					}
+					workerResult.setBestMoveSoFar(iPos, score);
+					raiseAlpha(sharedAlpha, score);
+					return workerResult;
+				}));
+			}
+		}
+		for (ForkJoinTask<InterfaceSearchResult> task : tasks) {
+			InterfaceSearchResult workerResult = task.join();
+			if (!workerResult.isResultFinal())
+				searchResult.setIsResultFinal(false);
+			if (searchResult.getBestMoveSoFar() == null || searchResult.getBestScoreSoFar() < workerResult.getBestScoreSoFar())
+				searchResult.setBestMoveSoFar(workerResult.getBestMoveSoFar(), workerResult.getBestScoreSoFar());
+		}
+		return searchResult;
+	}
+
+	private InterfaceSearchResult negamaxYbwc(Connect4Position position, YbwcContext context, float alpha, float beta) {
+		// Young Brothers Wait: the eldest (first) child is searched right here. Only
+		// then are its younger brothers forked, for idle pool workers to steal, with
+		// the alpha bound the eldest brother produced. Each brother has its own
+		// position, context and randomizer. A brother that fails high aborts the
+		// others, and aborting a context aborts everything searched below it.
+		if (context.getCurrentDepth() >= YBWC_SPLIT_DEPTH || context.isAborted())
+			return negamax(position, context, alpha, beta);
+
+		Connect4SearchResult searchResult = new Connect4SearchResult(); // Return
+																		// information
+		long key = position.getCanonicalRawPosition(); // Mirror images share one entry
+		boolean isMirrored = key != position.getRawPosition();
+		long s = map.get(key);
+		if (s != Connect4TranspositionTable.NOT_FOUND && isCutoff(s, alpha, beta)) { // Final, but maybe only a bound
+			searchResult.setClassStateFromCompacted(Connect4TranspositionTable.getCompacted(s), isMirrored);
+			return searchResult;
+		}
+		float originalAlpha = alpha;
+
+		int ply = context.getCurrentDepth();
+		int nMoves = getOrdering(position).orderMoves(position, ply, getHashColumn(position, key, isMirrored));
+		List<InterfaceIterator> moves = new ArrayList<InterfaceIterator>();
+		for (int iMove = 0; iMove < nMoves; iMove++) {
+			int iC = ordering.getMoves(ply)[iMove];
+			InterfaceIterator iPos = new Connect4Iterator(position.nC(), position.nR());
+			iPos.set(iC, 0);
+			int iR = position.nR() - position.getChipCount(iPos) - 1;
+			iPos.set(iC, iR);
+			if (iR >= 0) // The column is not yet full
+				moves.add(iPos);
+		}
+
+		InterfaceIterator eldest = moves.get(0);
+		float eldestScore = scoreMove(position, context, eldest, alpha, beta, searchResult);
+		if (context.isAborted()) { // Out of time, or a brother above failed high
+			searchResult.setBestMoveSoFar(eldest, searchResult.getBestScoreSoFar());
+			searchResult.setIsResultFinal(false);
+			return searchResult;
+		}
+		searchResult.setBestMoveSoFar(eldest, eldestScore);
+		alpha = Math.max(alpha, eldestScore);
+		if (alpha >= beta || eldestScore == 1f)
+			Connect4SearchMetrics.METRICS.recordBetaCutoff(0);
+		if (alpha < beta && eldestScore != 1f && moves.size() > 1) {
+			YbwcContext brothersContext = new YbwcContext(context); // Aborting it aborts every younger brother
+			AtomicInteger sharedAlpha = new AtomicInteger(Float.floatToIntBits(alpha));
+			List<ForkJoinTask<InterfaceSearchResult>> brothers = new ArrayList<ForkJoinTask<InterfaceSearchResult>>();
+			for (int iMove = 1; iMove < moves.size(); iMove++) {
+				InterfaceIterator iPos = moves.get(iMove);
+				int moveIndex = iMove;
+				Connect4Position brotherPosition = new Connect4Position(position);
+				YbwcContext brotherContext = new YbwcContext(brothersContext);
+				Connect4StrategyB brother = new Connect4StrategyB(rand.nextLong(), this);
+				brothers.add(ForkJoinTask.adapt(() -> {
+					float brotherAlpha = Float.intBitsToFloat(sharedAlpha.get());
+					if (brotherAlpha >= beta || brotherContext.isAborted())
+						return null; // This brother is not needed any more
+					InterfaceSearchResult brotherResult = new Connect4SearchResult();
+					float score = brother.scoreMove(brotherPosition, brotherContext, iPos, brotherAlpha, beta, brotherResult);
+					if (brotherContext.isAborted())
+						return null; // Stopped before it had a score
+					brotherResult.setBestMoveSoFar(iPos, score);
+					raiseAlpha(sharedAlpha, score);
+					if (score >= beta) {
+						brothersContext.abort(); // alpha beta pruning, for the brothers still searching
+						Connect4SearchMetrics.METRICS.recordBetaCutoff(moveIndex);
+					}
+					return brotherResult;
+				}).fork());
+			}
+			for (ForkJoinTask<InterfaceSearchResult> brother : brothers) {
+				InterfaceSearchResult brotherResult = brother.join();
+				if (brotherResult == null) {
+					searchResult.setIsResultFinal(false);
+					continue;
+				}
+				if (!brotherResult.isResultFinal())
+					searchResult.setIsResultFinal(false);
+				if (searchResult.getBestScoreSoFar() < brotherResult.getBestScoreSoFar())
+					searchResult.setBestMoveSoFar(brotherResult.getBestMoveSoFar(), brotherResult.getBestScoreSoFar());
+			}
+			if (brothersContext.isAborted())
+				searchResult.setIsResultFinal(false);
+		}
+
+		if (searchResult.isResultFinal() && position.getChipCount() % 3 == 1) // Hash this result
+			map.put(key, searchResult.getClassStateCompacted(isMirrored), context.getMinDepthSearchForThisPos() - context.getCurrentDepth(),
+					getBound(searchResult.getBestScoreSoFar(), originalAlpha, beta));
+		return searchResult;
+	}
+
+	private static void raiseAlpha(AtomicInteger sharedAlpha, float score) { // Shared alpha = max(shared alpha, score)
+		int alphaBits;
+		while (score > Float.intBitsToFloat(alphaBits = sharedAlpha.get()) && !sharedAlpha.compareAndSet(alphaBits, Float.floatToIntBits(score)))
+			;
+	}
+
+	public InterfaceSearchResult negamax(Connect4Position position, InterfaceSearchContext context, float alpha, float beta) {
+		// One search of position to the depth of context (see deepen() for the iterations)
+		if (windowMode == WindowMode.MTDF && context.getCurrentDepth() == 0)
+			return mtdf(position, context);
+		return alphaBeta(position, context, alpha, beta);
+	}
+
+	InterfaceSearchResult mtdf(Connect4Position position, InterfaceSearchContext context) {
+		// MTD(f): a series of null-window searches of the root. Each one only tells whether
+		// the score is above or below a guess, so it prunes more than a full window, and
+		// the bounds it leaves in searchTable make the next pass cheap. The first guess is
+		// the score of the last search of this position.
+		long key = position.getCanonicalRawPosition();
+		long s = searchTable.get(key);
+		float guess = s == Connect4TranspositionTable.NOT_FOUND ? 0f : getScore(Connect4TranspositionTable.getCompacted(s));
+		float lower = -2f; // Scores are in [-1,1]
+		float upper = 2f;
+		InterfaceSearchResult searchResult = null;
+		InterfaceSearchResult failHighResult = null; // Its move is known to reach lower
+		for (int iPass = 0; lower < upper && iPass < MTDF_MAX_PASSES; iPass++) {
+			float beta = guess == lower ? guess + SCORE_EPSILON : guess;
+			searchResult = alphaBeta(position, context, beta - SCORE_EPSILON, beta);
+			guess = searchResult.getBestScoreSoFar();
+			if (guess < beta) {
+				upper = guess;
+			} else {
+				lower = guess;
+				failHighResult = searchResult;
+			}
+			if (Connect4SearchClock.isOutOfTime(context))
+				break;
+		}
+		if (failHighResult != null && searchResult.getBestScoreSoFar() < lower)
+			return failHighResult;
+		return searchResult;
+	}
+
+	private static float getScore(int compacted) { // The score of a getClassStateCompacted() result
+		return (short) (compacted >>> 16) / ((float) (1 << 14));
+	}
+
+	InterfaceSearchResult alphaBeta(Connect4Position position, InterfaceSearchContext context, float alpha, float beta) {
+		// One search of position to the depth of context, within (alpha, beta)
+		nodeCount++;
+		Connect4SearchResult searchResult = new Connect4SearchResult(); // Return
+																		// information
+		long key = position.getCanonicalRawPosition(); // Mirror images share one entry
+		boolean isMirrored = key != position.getRawPosition();
+		long s = map.get(key); // Lock-free, even when shared by the threads of a parallel search
+		if (s != Connect4TranspositionTable.NOT_FOUND && !isCutoff(s, alpha, beta))
+			s = Connect4TranspositionTable.NOT_FOUND; // Final, but only a bound that does not settle this window
+		int draft = context.getMinDepthSearchForThisPos() - context.getCurrentDepth(); // Plies left to search
+		long t = s != Connect4TranspositionTable.NOT_FOUND ? Connect4TranspositionTable.NOT_FOUND : searchTable.get(key);
+		if (s != Connect4TranspositionTable.NOT_FOUND) {
+			searchResult.setClassStateFromCompacted(Connect4TranspositionTable.getCompacted(s), isMirrored);
+		} else if (t != Connect4TranspositionTable.NOT_FOUND && Connect4TranspositionTable.getDepth(t) >= draft && isCutoff(t, alpha, beta)) {
+			// Searched at least as deep before, and that result settles this window
+			searchResult.setClassStateFromCompacted(Connect4TranspositionTable.getCompacted(t), isMirrored);
+			searchResult.setIsResultFinal(false);
 		} else { // position is not hashed, so let's see if we can process it
 			int player = position.getPlayer();
 			int opponent = 3 - player; // There are two players, 1 and 2.
+			float originalAlpha = alpha;
+			boolean isOutOfTime = false;
 
-			int randomIndex = rand.nextInt(32);
-			int nRandom = probability_distribution[randomIndex];
-			float uncertaintyPenalty = .01f;
+			// Columns are tried in the order of Connect4MoveOrdering, not at random
+			int ply = context.getCurrentDepth();
+			int hashColumn = t == Connect4TranspositionTable.NOT_FOUND ? Connect4MoveOrdering.NO_MOVE
+					: Connect4MoveOrdering.getColumn(Connect4TranspositionTable.getCompacted(t), isMirrored, position.nC());
+			int nMoves = getOrdering(position).orderMoves(position, ply, hashColumn);
+			int[] moves = ordering.getMoves(ply);
+			// PVS only pays where children are searched, not where they are rolled out
+			boolean isPvs = windowMode == WindowMode.PVS && ply + 1 < Math.min(context.getMinDepthSearchForThisPos(), context.getMaxDepthSearchForThisPos());
+			InterfaceIterator iPos = new Connect4Iterator(position.nC(), position.nR());
 
-			for (int iC_raw = 0; iC_raw < position.nC(); iC_raw++) {
-				int iC = (iC_raw + nRandom) % position.nC();
-				InterfacePosition posNew = new Connect4Position(position);
-				InterfaceIterator iPos = new Connect4Iterator(position.nC(), position.nR());
+			for (int iMove = 0; iMove < nMoves; iMove++) {
+				int iC = moves[iMove];
 				iPos.set(iC, 0);
-				int iR = position.nR() - posNew.getChipCount(iPos) - 1;
+				int iR = position.nR() - position.getChipCount(iPos) - 1;
 				iPos.set(iC, iR);
 				if (iR >= 0) { // The column is not yet full
 					if (searchResult.getBestMoveSoFar() == null)
 						searchResult.setBestMoveSoFar(iPos, searchResult.getBestScoreSoFar());
-					posNew.setColor(iPos, player);
-					int isWin = posNew.isWinner(iPos); // iPos
 					float score;
-					if (isWin == player) {
-						score = 1f; // Win
-					} else if (isWin == 0) {
-						score = 0f; // Draw
-					} else if (isWin == opponent) {
-						score = -1f; // Loss
-					} else { // Game is not over, so check further down the game
-
-						if (context.getCurrentDepth() < context.getMaxDepthSearchForThisPos() && context.getCurrentDepth() < context.getMinDepthSearchForThisPos()) {
-							posNew.setPlayer(opponent);
-							context.setCurrentDepth(context.getCurrentDepth() + 1);
-							InterfaceSearchResult opponentResult = negamax(posNew, context, -beta, -alpha);
-							context.setCurrentDepth(context.getCurrentDepth() - 1);
-							score = -opponentResult.getBestScoreSoFar();
-							// Note, for player, opponent's best move has
-							// negative worth
-							// That is because, score = ((probability of
-							// win) -
-							// (probability of loss))
-
-							if (opponentResult.isResultFinal() == false) { // if
-																			// the
-																			// result
-																			// is
-																			// not
-																			// final,
-																			// reverse
-																			// penalty
-								searchResult.setIsResultFinal(false);
-								score -= 2 * uncertaintyPenalty;
-							}
-						} else {
-							// We cannot recurse further down the minimax
-							// search
-							// We cannot recurse further down the minimax
-							// search
-							// play n random boards, collect score
-							int numWin = 0;
-							int numLose = 0;
-							int numDraws = 0;
-							float total_plays = 50.0f; // change this if we
-														// ever
-														// want to play less
-														// or
-														// more
-							for (int i = 0; i < total_plays; i++) {
-								int winner = playRandomlyUntilEnd(posNew, player);
-								// ok, we have an end state.
-								if (winner == player) {
-									// we win!
-									numWin++;
-								} else if (winner == opponent) {
-									// we lose!
-									numLose++;
-								} else {
-									numDraws++;
-								}
-							}
-							score = (numWin - numLose) / total_plays;
-							// score = -uncertaintyPenalty;
-							searchResult.setIsResultFinal(false);
+					if (isPvs && iMove > 0 && beta - alpha > SCORE_EPSILON) {
+						score = scoreMove(position, context, iPos, alpha, alpha + SCORE_EPSILON, searchResult); // Is it better than the first move?
+						if (alpha < score && score < beta && !((Connect4SearchContext) context).isAborted())
+							score = scoreMove(position, context, iPos, score, beta, searchResult); // Yes, so find out by how much
+					} else {
+						score = scoreMove(position, context, iPos, alpha, beta, searchResult);
+					}
+					if (((Connect4SearchContext) context).isAborted()) { // TODO: add to interface
+						// The time is up (see Connect4SearchClock), so this score is not to be
+						// trusted. Every node above unwinds the same way, right away.
+						if (((Connect4SearchContext) context).getOriginalPlayer() == opponent) {
+							searchResult.setBestMoveSoFar(searchResult.getBestMoveSoFar(), 0.95f); // Set to original opponent almost-win
 						}
+						searchResult.setIsResultFinal(false);
+						isOutOfTime = true;
+						break; // Need to make any move now
 					}
 
 					if (searchResult.getBestMoveSoFar() == null || searchResult.getBestScoreSoFar() < score) {
 						searchResult.setBestMoveSoFar(iPos, score);
-						if (score == 1f)
+						if (score == 1f) {
+							ordering.recordCutoff(position, ply, iC, context.getMinDepthSearchForThisPos() - ply);
+							Connect4SearchMetrics.METRICS.recordBetaCutoff(iMove);
 							break; // No need to search further if one can
 									// definitely win
+						}
 					}
 					alpha = Math.max(alpha, score);
+					if (rootAlpha != null && ply == 1) // A root child: its beta is minus the root alpha, which another worker may have raised since
+						beta = Math.min(beta, -Float.intBitsToFloat(rootAlpha.get()));
 					if (alpha >= beta) {
+						ordering.recordCutoff(position, ply, iC, context.getMinDepthSearchForThisPos() - ply);
+						Connect4SearchMetrics.METRICS.recordBetaCutoff(iMove);
 						break; // alpha beta pruning
 					}
 				}
-				long timeNow = System.nanoTime();
-				if (context.getMaxSearchTimeForThisPos() - timeNow <= 0) {
-					System.out.println("Connect4Strategy:getBestMove(): ran out of time: maxTime(" + context.getMaxSearchTimeForThisPos() + ") :time(" + timeNow + "): recDepth("
-							+ context.getCurrentDepth() + ")");
-					if (context.getCurrentDepth() == 0) {
-						// Revert back to a lesser search
-						System.out.print("Connect4Strategy: Depth limit of " + context.getMinDepthSearchForThisPos() + " -> ");
-						context.setMinDepthSearchForThisPos(context.getMinDepthSearchForThisPos() - 1);
-						System.out.println(context.getMinDepthSearchForThisPos());
-					}
-					if (((Connect4SearchContext) context).getOriginalPlayer() == opponent) { // TODO:
-																								// add
-																								// to
-																								// interface
-						searchResult.setBestMoveSoFar(searchResult.getBestMoveSoFar(), 0.95f); // Set
-																								// to
-																								// original
-																								// opponent
-																								// almost-win
-					}
-					searchResult.setIsResultFinal(false);
-					break; // Need to make any move now
-				}
 			}
 
+			int bound = getBound(searchResult.getBestScoreSoFar(), originalAlpha, beta);
 			if (searchResult.isResultFinal() && position.getChipCount() % 3 == 1)
 				// // Hash this result
-				synchronized (map) {
-					map.put(position.getRawPosition(), searchResult.getClassStateCompacted());
-				}
+				map.put(key, searchResult.getClassStateCompacted(isMirrored), draft, bound);
+			if (searchResult.getBestMoveSoFar() != null && !isOutOfTime) // For the next search: its move ordering, and maybe a cutoff
+				searchTable.put(key, searchResult.getClassStateCompacted(isMirrored), draft, bound);
+		}
+		return searchResult;
+	}
+
+	private static int getBound(float score, float originalAlpha, float beta) { // What a score searched within (originalAlpha, beta) is
+		return score <= originalAlpha ? Connect4TranspositionTable.UPPER_BOUND
+				: score >= beta ? Connect4TranspositionTable.LOWER_BOUND : Connect4TranspositionTable.EXACT;
+	}
+
+	private static boolean isCutoff(long data, float alpha, float beta) { // Does the table entry settle the window (alpha, beta)?
+		float score = getScore(Connect4TranspositionTable.getCompacted(data));
+		switch (Connect4TranspositionTable.getBound(data)) {
+		case Connect4TranspositionTable.LOWER_BOUND:
+			return score >= beta;
+		case Connect4TranspositionTable.UPPER_BOUND:
+			return score <= alpha;
+		default:
+			return true;
+		}
+	}
 
+	float scoreMove(Connect4Position position, InterfaceSearchContext context, InterfaceIterator iPos, float alpha, float beta, InterfaceSearchResult searchResult) {
+		// Plays the move at iPos, scores it for the player to move and takes it back
+		// searchResult is set to not final if the score is not exact
+		int player = position.getPlayer();
+		int opponent = 3 - player; // There are two players, 1 and 2.
+		float uncertaintyPenalty = .01f;
+		if (clock.isTimeUp(context)) { // Counts as a node, whether it is searched or rolled out
+			searchResult.setIsResultFinal(false);
+			return 0f; // Not used, the caller sees the abort
 		}
+		position.makeMove(iPos.iC()); // It is now the opponent's turn
+		int isWin = position.isWinner(iPos); // iPos
+		float score;
+		if (isWin == player) {
+			score = 1f; // Win
+		} else if (isWin == 0) {
+			score = 0f; // Draw
+		} else if (isWin == opponent) {
+			score = -1f; // Loss
+		} else { // Game is not over, so check further down the game
+
+			if (context.getCurrentDepth() < context.getMaxDepthSearchForThisPos() && context.getCurrentDepth() < context.getMinDepthSearchForThisPos()) {
+				context.setCurrentDepth(context.getCurrentDepth() + 1);
+				InterfaceSearchResult opponentResult = context instanceof YbwcContext // YBWC keeps splitting down to YBWC_SPLIT_DEPTH
+						? negamaxYbwc(position, (YbwcContext) context, -beta, -alpha)
+						: alphaBeta(position, context, -beta, -alpha);
+				context.setCurrentDepth(context.getCurrentDepth() - 1);
+				score = -opponentResult.getBestScoreSoFar();
+				// Note, for player, opponent's best move has negative worth
+				// That is because, score = ((probability of win) -
+				// (probability of loss))
 
-		// if we haven't run out of time yet, then increase the depth
-		long timeLeftInNanoSeconds = context.getMaxSearchTimeForThisPos() - System.nanoTime();
-		if (context.getCurrentDepth() == 0 && !searchResult.isResultFinal() && timeLeftInNanoSeconds > ((Connect4SearchContext) context).getOriginalTimeLimit() * 9 / 10) { // TODO:
-																																											// add
-																																											// to
-																																											// interface
-			System.out.print("Connect4StrategyB: Depth limit of " + context.getMinDepthSearchForThisPos() + " -> ");
-			context.setMinDepthSearchForThisPos(context.getMinDepthSearchForThisPos() + 1);
-			System.out.println(context.getMinDepthSearchForThisPos());
-			InterfaceSearchResult anotherResult = negamax(position, context, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
-			if (anotherResult.getBestScoreSoFar() > searchResult.getBestScoreSoFar()) {
-				searchResult.setBestMoveSoFar(anotherResult.getBestMoveSoFar(), anotherResult.getBestScoreSoFar());
-				searchResult.setIsResultFinal(anotherResult.isResultFinal());
+				if (opponentResult.isResultFinal() == false) { // if the result is not final, reverse penalty
+					searchResult.setIsResultFinal(false);
+					score -= 2 * uncertaintyPenalty;
+				}
+			} else {
+				// We cannot recurse further down the minimax search
+				// play a batch of random boards (the opponent moves first), collect score
+				// The seed comes from rand, so the same rand gives the same score
+				long counts = getRollouts(position).playRandomlyUntilEnd(position, opponent, rand.nextLong());
+				int numWin = Connect4RolloutBatch.getWins(counts, player);
+				int numLose = Connect4RolloutBatch.getWins(counts, opponent);
+				float total_plays = rollouts.getRolloutCount(); // change ROLLOUTS_PER_LEAF to play less or more
+				score = (numWin - numLose) / total_plays;
+				// score = -uncertaintyPenalty;
+				searchResult.setIsResultFinal(false);
 			}
 		}
-		return searchResult;
+		position.unmakeMove();
+		return score;
 	}
 
 	public int playRandomlyUntilEnd(InterfacePosition pos, int player) {
 		// strategy for this code: while the position is not an ending position,
-		// keep making random moves until someone wins, then return the score
-		// the calling code calls this 100 times, and computes how many times
-		// are win
-		// vs how many times are loss, over 100
-		// draws are taken out of the equation
+		// keep making random moves until someone wins, then return the winner
+		// (0 for a draw). player has just moved, so the opponent moves first.
+		// Columns are picked with the same center-based distribution as
+		// probability_distribution, but only among columns that are not full.
 		// this should never be called starting from a position with no fillable
 		// spots
-		int current_player = 3 - player;
-		InterfacePosition posNew = new Connect4Position(pos);
-		while (posNew.isWinner() == -1) {
-			// find a position that is playable by iterating through the columns
-			boolean isFillable = false;
-			int final_iC = -1;
-			int final_iR = -1;
-			InterfaceIterator iPos = new Connect4Iterator(posNew.nC(), posNew.nR());
-			while (!isFillable) {
-				int randomIndex = rand.nextInt(32); // generate random integer
-													// for column
-				int nRandom = probability_distribution[randomIndex];
-				iPos.set(nRandom, 0); // check the first row associated to the
-										// column
-				int iR = posNew.nR() - posNew.getChipCount(iPos) - 1; // see if
-																		// the
-																		// column
-																		// isn't
-																		// full
-				iPos.set(nRandom, iR);
-				if (iR >= 0) {
-					// it's fillable, so let's put something in it
-					isFillable = true;
-					final_iR = iR;
-					final_iC = nRandom;
-					break; // defensive programming
-				}
-			}
-			// we have a playable position, let's play it
-			posNew.setPlayer(current_player);
-			iPos.set(final_iC, final_iR);
-			posNew.setColor(iPos, current_player);
-			current_player = 3 - current_player;
-		}
-		return posNew.isWinner();
+		if (rollout == null)
+			rollout = new Connect4Rollout(pos.nC(), pos.nR(), new SplittableRandom(rand.nextInt(Integer.MAX_VALUE)), true);
+		Connect4Position posBits = pos instanceof Connect4Position ? (Connect4Position) pos : new Connect4Position(pos);
+		return rollout.playRandomlyUntilEnd(posBits, 3 - player);
 	}
 
 	@Override
@@ -245,9 +638,31 @@ public class Connect4StrategyB implements InterfaceStrategy {
 		return null;
 	}
 
+	static class YbwcContext extends Connect4SearchContext {
+		// A context of a YBWC search, a copy of the context of the node above it, so that
+		// aborting it (e.g., on a cutoff) aborts every brother searched under it
+		YbwcContext(InterfaceSearchContext context) {
+			super((Connect4SearchContext) context);
+		}
+	}
+
 	public class FastRandomizer {
 		long seed = System.nanoTime(); // spawned at launch
 
+		public FastRandomizer() {
+		}
+
+		public FastRandomizer(long seed) {
+			this.seed = seed == 0 ? 1 : seed; // xorshift never leaves 0
+		}
+
+		public long nextLong() {
+			seed ^= (seed << 21);
+			seed ^= (seed >>> 35);
+			seed ^= (seed << 4);
+			return seed;
+		}
+
 		/**
 		 * Gets a number in the range (0,max_exclusive), exclusive
 		 * 
@@ -255,11 +670,8 @@ public class Connect4StrategyB implements InterfaceStrategy {
 		 * @return
 		 */
 		public int nextInt(int max_exclusive) {
-			seed ^= (seed << 21);
-			seed ^= (seed >>> 35);
-			seed ^= (seed << 4);
 			// use Math.abs because Java is dumb and doesn't do unsigned longs
-			return (int) Math.abs(seed % max_exclusive);
+			return (int) Math.abs(nextLong() % max_exclusive);
 		}
 	}
 }
@@ -1,7 +1,6 @@
 package c_minimax;
 
 import java.util.Random;
-import java.util.TreeMap;
 
 //author: Gary Kalmanovich; rights reserved
 
@@ -26,13 +25,13 @@ public class Connect4StrategyDalen implements InterfaceStrategy {
 			{ VLT, BLU, GRN, YEL, GRN, BLU, VLT }, // Row 5
 	};
 
-	TreeMap<Long, Integer> checkedPositions = new TreeMap<Long, Integer>(); // minor
-																			// slowdown
-																			// @16.7
-																			// million
-																			// (try
-																			// mapDB?)
+	Connect4TranspositionTable checkedPositions = new Connect4TranspositionTable(32); // Fixed
+																						// size
+																						// (in
+																						// megabytes)
 	Random rand = new Random(); // One can seed with a parameter variable here
+	Connect4SearchClock clock = new Connect4SearchClock();
+	int rootFirstColumn = -1; // Searched first at the root: the best move of the last iteration (-1 for none)
 
 	Connect4StrategyDalen() {
 		int seed = rand.nextInt();
@@ -42,12 +41,26 @@ public class Connect4StrategyDalen implements InterfaceStrategy {
 
 	@Override
 	public InterfaceSearchResult getBestMove(InterfacePosition position, InterfaceSearchContext context) {
-		InterfaceSearchResult searchResult = new Connect4SearchResult(); // Return
-																			// information
+		// Deepened one ply at a time, see Connect4IterativeDeepening (no alpha-beta, so no aspiration windows)
+		return Connect4IterativeDeepening.search(context, position.nC(), (depth, alpha, beta, lastResult) -> {
+			rootFirstColumn = lastResult == null || lastResult.getBestMoveSoFar() == null ? -1 : lastResult.getBestMoveSoFar().iC();
+			return search(position, context);
+		}, false, "Connect4StrategyDalen");
+	}
 
-		Integer checkedResult = checkedPositions.get(position.getRawPosition());
-		if (checkedResult != null) {
-			searchResult.setClassStateFromCompacted(checkedResult);
+	private InterfaceSearchResult search(InterfacePosition position, InterfaceSearchContext context) {
+		Connect4SearchResult searchResult = new Connect4SearchResult(); // Return
+																		// information
+
+		long checkedKey = ((Connect4Position) position).getCanonicalRawPosition(); // Mirror
+																					// images
+																					// share
+																					// one
+																					// entry
+		boolean isMirrored = checkedKey != position.getRawPosition();
+		long checkedResult = checkedPositions.get(checkedKey);
+		if (checkedResult != Connect4TranspositionTable.NOT_FOUND) {
+			searchResult.setClassStateFromCompacted(Connect4TranspositionTable.getCompacted(checkedResult), isMirrored);
 		} else { // position is not hashed, so let's see if we can process it
 
 			int player = position.getPlayer();
@@ -58,6 +71,12 @@ public class Connect4StrategyDalen implements InterfaceStrategy {
 
 			for (int iC_raw = 0; iC_raw < position.nC(); iC_raw++) {
 				int iC = (iC_raw + nRandom) % position.nC();
+				if (context.getCurrentDepth() == 0 && rootFirstColumn >= 0) { // Swap rootFirstColumn to the front
+					if (iC_raw == 0)
+						iC = rootFirstColumn;
+					else if (iC == rootFirstColumn)
+						iC = nRandom;
+				}
 				InterfacePosition posNew = new Connect4Position(position);
 				InterfaceIterator iPos = new Connect4Iterator(position.nC(), position.nR());
 				iPos.set(iC, 0);
@@ -94,7 +113,7 @@ public class Connect4StrategyDalen implements InterfaceStrategy {
 																										// min
 							posNew.setPlayer(opponent);
 							context.setCurrentDepth(context.getCurrentDepth() + 1);
-							InterfaceSearchResult opponentResult = getBestMove(posNew, context); // Return
+							InterfaceSearchResult opponentResult = search(posNew, context); // Return
 																									// information
 																									// is
 																									// in
@@ -138,22 +157,17 @@ public class Connect4StrategyDalen implements InterfaceStrategy {
 
 					if (searchResult.getBestMoveSoFar() == null || searchResult.getBestScoreSoFar() < score) {
 						searchResult.setBestMoveSoFar(iPos, score);
-						if (score == 1f)
+						if (score == 1f) {
+							Connect4SearchMetrics.METRICS.recordBetaCutoff(iC_raw);
 							break; // No need to search further if one can
 									// definitely win
+						}
 					}
 				}
-				long timeNow = System.nanoTime();
-				if (context.getMaxSearchTimeForThisPos() - timeNow <= 0) {
-					System.out.println("Connect4StrategyDalen:getBestMove(): ran out of time: maxTime(" + context.getMaxSearchTimeForThisPos() + ") :time(" + timeNow + "): recDepth("
+				if (clock.isTimeUp(context)) {
+					System.out.println("Connect4StrategyDalen:getBestMove(): ran out of time: maxTime(" + context.getMaxSearchTimeForThisPos() + ") :time(" + System.nanoTime() + "): recDepth("
 							+ context.getCurrentDepth() + ")");
-					if (context.getCurrentDepth() == 0) {
-						// Revert back to a lesser search
-						System.out.print("Connect4StrategyDalen: Depth limit of " + context.getMinDepthSearchForThisPos() + " -> ");
-						context.setMinDepthSearchForThisPos(context.getMinDepthSearchForThisPos() - 1);
-						System.out.println(context.getMinDepthSearchForThisPos());
-					}
-					if (((Connect4SearchContext) context).getOriginalPlayer() == opponent) { // TODO:
+					if (((Connect4SearchContext) context).getOriginalPlayer() == opponent && searchResult.getBestMoveSoFar() != null) { // TODO:
 																								// add
 																								// to
 																								// interface
@@ -168,27 +182,11 @@ public class Connect4StrategyDalen implements InterfaceStrategy {
 				}
 			}
 
-			// if (searchResult.isResultFinal() && position.getChipCount()%3==1)
-			// // Hash this result
-			// checkedPositions.put(position.getRawPosition(),searchResult.getClassStateCompacted());
+			if (searchResult.isResultFinal()) // Hash this result
+				checkedPositions.put(checkedKey, searchResult.getClassStateCompacted(isMirrored), context.getMinDepthSearchForThisPos() - context.getCurrentDepth());
 
 		}
 
-		long timeLeftInNanoSeconds = context.getMaxSearchTimeForThisPos() - System.nanoTime();
-		if (context.getCurrentDepth() == 0 && !searchResult.isResultFinal() && timeLeftInNanoSeconds > ((Connect4SearchContext) context).getOriginalTimeLimit() * 9 / 10) { // TODO:
-																																											// add
-																																											// to
-																																											// interface
-			System.out.print("Connect4StrategyDalen: Depth limit of " + context.getMinDepthSearchForThisPos() + " -> ");
-			context.setMinDepthSearchForThisPos(context.getMinDepthSearchForThisPos() + 1);
-			System.out.println(context.getMinDepthSearchForThisPos());
-			InterfaceSearchResult anotherResult = getBestMove(position, context);
-			if (anotherResult.getBestScoreSoFar() > searchResult.getBestScoreSoFar()) {
-				searchResult.setBestMoveSoFar(anotherResult.getBestMoveSoFar(), anotherResult.getBestScoreSoFar());
-				searchResult.setIsResultFinal(anotherResult.isResultFinal());
-			}
-		}
-
 		return searchResult;
 	}
 
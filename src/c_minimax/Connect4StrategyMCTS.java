@@ -0,0 +1,216 @@
+package c_minimax;
+
+import java.util.SplittableRandom;
+
+//author: Gary Kalmanovich; rights reserved
+
+public class Connect4StrategyMCTS implements InterfaceStrategy {
+    // UCT Monte Carlo tree search on the bitboards of Connect4Position
+    // Every iteration walks down the tree by UCB1, adds the children of the node it
+    //   reaches (once that node has been visited), plays one random game from there
+    //   with Connect4Rollout, and adds the result to every node on the way back up.
+    // The tree is kept between moves. The next getBestMove looks for its position
+    //   among the nodes up to two plies under the old root (our move, then the reply),
+    //   and searches on from there, so statistics of earlier turns are not lost.
+    // Nodes live in a Connect4NodePool of fixed size. Once the pool is more than half
+    //   full, the part of the tree that is no longer reachable is compacted away.
+
+    static final float EXPLORATION          = 1.4f; // UCB1 constant, about sqrt(2)
+    private static final int NONE = Connect4NodePool.NONE;
+
+    private final SplittableRandom rand = new SplittableRandom(); // One can seed with a parameter variable here
+    private final Connect4NodePool nodes;
+    private Connect4Rollout rollout = null; // Random games are played on bitboards (made on first use)
+    private final Connect4SearchClock clock = new Connect4SearchClock(); // An iteration counts as a node
+
+    private long rootOccupied; // Position at the root
+    private long rootRed;      // Chips of player 1 at the root
+    private int  rootPlayer;   // Player to move at the root
+    private long bottomRow;    // Lowest spot of every column, for getKey()
+    private int  nC;
+    private int  nR;
+
+    private final int[] path = new int[64]; // Nodes of the current iteration, root first
+
+    Connect4StrategyMCTS() {
+        this(256); // Both semi-spaces, in megabytes
+    }
+
+    Connect4StrategyMCTS(int sizeInMegabytes) {
+        nodes = new Connect4NodePool(sizeInMegabytes);
+    }
+
+    @Override
+    public InterfaceSearchResult getBestMove(InterfacePosition pos, InterfaceSearchContext context) {
+        Connect4Position position = pos instanceof Connect4Position ? (Connect4Position) pos : new Connect4Position(pos);
+        if (rollout == null || nC != position.nC() || nR != position.nR()) {
+            nC        = position.nC();
+            nR        = position.nR();
+            rollout   = new Connect4Rollout(nC, nR, rand.split(), false);
+            bottomRow = rollout.getLegalMoves(0);
+            nodes.clear();
+        }
+        setRoot(position.getOccupiedBitboard(), position.getColorBitboard(1), position.getPlayer());
+
+        boolean isCompacted = false;
+        do {
+            iterate();
+            if (!isCompacted && nodes.getUsed() > nodes.getCapacity() - nC) {
+                nodes.compact(); // Once per move. If the pool is still full, leaves just stop growing
+                isCompacted = true;
+            }
+        } while (!clock.isTimeUp(context) && !isRootSolved()); // The search may be aborted by another thread
+
+        Connect4SearchResult searchResult = new Connect4SearchResult(); // Return information
+        int root  = nodes.getRoot();
+        int first = nodes.getFirstChild(root);
+        int best  = NONE;
+        for (int child = first; child < first + nodes.getChildCount(root); child++) { // The most visited move is the most trusted one
+            if (nodes.getTerminal(child) > 0) { best = child; break; } // Immediate win
+            if (best == NONE || nodes.getVisits(child) > nodes.getVisits(best)) best = child;
+        }
+        InterfaceIterator bestMove = new Connect4Iterator(nC, nR);
+        int iBit = Long.numberOfTrailingZeros(nodes.getMove(best));
+        bestMove.set(iBit / (nR+1), nR - 1 - iBit % (nR+1)); // Bit index to (iC, top-down iR)
+        if (nodes.getTerminal(best) > 0) {
+            searchResult.setBestMoveSoFar(bestMove, 1f);
+        } else {
+            searchResult.setBestMoveSoFar(bestMove, 2 * nodes.getWins(best) / Math.max(nodes.getVisits(best), 1) - 1); // P(win)-P(loss)
+            searchResult.setIsResultFinal(false);
+        }
+        return searchResult;
+    }
+
+    private long getKey(long occupied, long red) { // Unique for every position (the player follows from the chip count)
+        return red + occupied + bottomRow;
+    }
+
+    private void setRoot(long occupied, long red, int player) {
+        // Keep the subtree of this position if the old tree has it, else start over
+        long key     = getKey(occupied, red);
+        int  subtree = findNode(nodes.getRoot(), key, 2);
+        if (subtree == NONE || nodes.getTerminal(subtree) >= 0) {
+            nodes.newRoot(key);
+        } else {
+            nodes.setRoot(subtree); // O(1)
+            if (nodes.getUsed() > nodes.getCapacity() / 2) nodes.compact();
+        }
+        rootOccupied = occupied;
+        rootRed      = red;
+        rootPlayer   = player;
+        long stones = player == 1 ? red : occupied ^ red;
+        if (!nodes.isExpanded(nodes.getRoot()) && !expand(nodes.getRoot(), occupied, stones)) {
+            expand(nodes.newRoot(key), occupied, stones); // No room even for the root's children: start over
+        }
+    }
+
+    private int findNode(int node, long key, int maxDepth) { // The node of key, at most maxDepth plies under node
+        if (node == NONE) return NONE;
+        if (nodes.getKey(node) == key) return node;
+        if (maxDepth == 0 || !nodes.isExpanded(node)) return NONE;
+        int first = nodes.getFirstChild(node);
+        for (int child = first; child < first + nodes.getChildCount(node); child++) {
+            int found = findNode(child, key, maxDepth - 1);
+            if (found != NONE) return found;
+        }
+        return NONE;
+    }
+
+    private boolean isRootSolved() { // Some move wins right away, or there is only one move
+        int root  = nodes.getRoot();
+        int first = nodes.getFirstChild(root);
+        for (int child = first; child < first + nodes.getChildCount(root); child++) {
+            if (nodes.getTerminal(child) > 0) return true;
+        }
+        return nodes.getChildCount(root) == 1;
+    }
+
+    private void iterate() {
+        long occupied = rootOccupied;
+        long stones   = rootPlayer == 1 ? rootRed : rootOccupied ^ rootRed; // Of the player to move
+        int  player   = rootPlayer;
+        int  node     = nodes.getRoot();
+        int  nPath    = 0;
+        path[nPath++] = node;
+
+        while (nodes.getTerminal(node) < 0) { // Walk down by UCB1
+            if (!nodes.isExpanded(node)) {
+                if (nodes.getVisits(node) == 0) break; // A leaf is only expanded on its second visit
+                if (!expand(node, occupied, stones)) break; // The pool is full: just play from here
+            }
+            node = select(node);
+            long move = nodes.getMove(node);
+            stones   |= move;
+            occupied |= move;
+            stones    = occupied ^ stones; // Now the opponent's stones
+            player    = 3 - player;
+            path[nPath++] = node;
+        }
+
+        int terminal = nodes.getTerminal(node);
+        int winner   = terminal >= 0 ? terminal : rollout.playRandomlyUntilEnd(occupied, stones, player);
+        if (terminal < 0) Connect4SearchMetrics.METRICS.addRollouts(1);
+
+        int mover = 3 - player; // Who made the move into node
+        for (int iPath = nPath - 1; iPath >= 0; iPath--) { // Back up the result
+            nodes.addResult(path[iPath], winner == mover ? 1f : winner == 0 ? 0.5f : 0f);
+            mover = 3 - mover;
+        }
+    }
+
+    private boolean expand(int node, long occupied, long stones) { // false if the pool is full
+        long legalMoves = rollout.getLegalMoves(occupied);
+        int  player     = getPlayerToMove(occupied);
+        int  n          = Long.bitCount(legalMoves);
+        int  first      = nodes.allocate(n);
+        if (first == NONE) return false;
+        long red = player == 1 ? stones : occupied ^ stones;
+        for (int child = first; legalMoves != 0; child++) {
+            long move = Long.lowestOneBit(legalMoves);
+            legalMoves ^= move;
+            int terminal = Connect4Position.isFourInARow(stones | move, nR) ? player
+                         : rollout.getLegalMoves(occupied | move) == 0      ? 0 // Board is full: draw
+                         : -1;
+            nodes.set(child, getKey(occupied | move, player == 1 ? red | move : red), Long.numberOfTrailingZeros(move), terminal);
+        }
+        nodes.setChildren(node, first, n);
+        return true;
+    }
+
+    private int getPlayerToMove(long occupied) { // Player to move, from the number of chips played since the root
+        return (Long.bitCount(occupied ^ rootOccupied) & 1) == 0 ? rootPlayer : 3 - rootPlayer;
+    }
+
+    private int select(int node) {
+        int    best      = NONE;
+        float  bestValue = Float.NEGATIVE_INFINITY;
+        double logVisits = Math.log(Math.max(nodes.getVisits(node), 1));
+        int    first     = nodes.getFirstChild(node);
+        for (int child = first; child < first + nodes.getChildCount(node); child++) {
+            if (nodes.getTerminal(child) > 0) return child; // Only the player to move can have just won, so take it
+            int   visits = nodes.getVisits(child);
+            float value;
+            if (visits == 0) {
+                value = 1000f + (float) rand.nextDouble(); // Unvisited children first, in random order
+            } else {
+                value = nodes.getWins(child) / visits + EXPLORATION * (float) Math.sqrt(logVisits / visits);
+            }
+            if (value > bestValue) {
+                bestValue = value;
+                best      = child;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void setContext(InterfaceSearchContext strategyContext) {
+        // Not used in this strategy
+    }
+
+    @Override
+    public InterfaceSearchContext getContext() {
+        // Not used in this strategy
+        return null;
+    }
+}
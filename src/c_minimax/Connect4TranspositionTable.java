@@ -0,0 +1,120 @@
+package c_minimax;
+
+import java.util.Arrays;
+
+//author: Gary Kalmanovich; rights reserved
+
+class Connect4TranspositionTable {
+    // Fixed-size hash table from getRawPosition() keys to getClassStateCompacted() results
+    // Everything lives in a single long[], so nothing is boxed and a lookup never allocates
+    // Each entry takes two longs: the key, then a data word
+    //   Rightmost 32 bits of data are the compacted result
+    //   Next 8 bits are depth+1, so that an empty entry is simply data==0
+    //   Next 2 bits say whether the result is EXACT, or only a LOWER or UPPER bound
+    // The key word actually holds key^data, so that an entry torn by two threads writing
+    //   at once does not validate, and is a miss. Hence no locks are needed.
+    // A key can sit in any of BUCKET_SIZE consecutive entries (open addressing)
+    // Once those are all taken, the shallowest one is replaced (depth-preferred)
+    // Subclasses can keep the same words somewhere else (e.g., Connect4MappedTable)
+
+    static final long NOT_FOUND   = 0;
+    static final int  BUCKET_SIZE = 4;
+    static final int  EXACT       = 0; // Kinds of results (EXACT is what older entries read as)
+    static final int  LOWER_BOUND = 1; // The score is at least this (the search failed high)
+    static final int  UPPER_BOUND = 2; // The score is at most this (the search failed low)
+
+    private final long[] table;
+    private final int    indexMask; // Number of entries - 1 (a power of two)
+    private final int    indexShift;
+
+    Connect4TranspositionTable( int sizeInMegabytes ) {
+        this( getEntryCount(sizeInMegabytes, 1 << 29), true ); // long[] is limited to 2^31 elements
+    }
+
+    protected Connect4TranspositionTable( int nEntries, boolean isInMemory ) {
+        table      = isInMemory ? new long[2*nEntries] : null;
+        indexMask  = nEntries - 1;
+        indexShift = 64 - Integer.numberOfTrailingZeros(nEntries);
+    }
+
+    static int getEntryCount( int sizeInMegabytes, int maxEntries ) { // Largest power of two that fits
+        long nEntries = Math.max( ((long)sizeInMegabytes << 20) / 16, BUCKET_SIZE );
+        return (int) Math.min( Long.highestOneBit(nEntries), maxEntries );
+    }
+
+    int getEntryCount() {
+        return indexMask + 1;
+    }
+
+    protected long getWord( int iWord ) {
+        return table[iWord];
+    }
+
+    protected void setWord( int iWord, long word ) {
+        table[iWord] = word;
+    }
+
+    private int getIndex( long key ) {
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> indexShift) & indexMask; // Fibonacci hashing
+    }
+
+    long get( long key ) { // Returns the data word, or NOT_FOUND
+        long data = find(key);
+        Connect4SearchMetrics.METRICS.recordTableProbe( data != NOT_FOUND );
+        return data;
+    }
+
+    private long find( long key ) {
+        int index = getIndex(key);
+        for ( int i = 0; i < BUCKET_SIZE; i++ ) {
+            int  slot = 2*((index+i) & indexMask);
+            long data = getWord(slot+1);
+            if ( data == NOT_FOUND            ) return NOT_FOUND; // Entries are never removed, so the key is not further on
+            if ( (getWord(slot)^data) == key  ) return data;
+        }
+        return NOT_FOUND;
+    }
+
+    void put( long key, int compacted, int depth ) {
+        put( key, compacted, depth, EXACT );
+    }
+
+    void put( long key, int compacted, int depth, int bound ) {
+        Connect4SearchMetrics.METRICS.recordTableStore();
+        long data        = (compacted & 0xFFFFFFFFL) | ((long)(Math.min(Math.max(depth,0),254)+1) << 32) | ((long)bound << 40);
+        int  index       = getIndex(key);
+        int  replaceSlot = -1;
+        int  minDepth    = Integer.MAX_VALUE;
+        for ( int i = 0; i < BUCKET_SIZE; i++ ) {
+            int  slot    = 2*((index+i) & indexMask);
+            long oldData = getWord(slot+1);
+            if ( oldData == NOT_FOUND || (getWord(slot)^oldData) == key ) {
+                if ( oldData != NOT_FOUND && getDepth(oldData) > depth ) return; // Keep the deeper result
+                replaceSlot = slot;
+                break;
+            }
+            if ( getDepth(oldData) < minDepth ) {
+                minDepth    = getDepth(oldData);
+                replaceSlot = slot;
+            }
+        }
+        setWord(replaceSlot  , key^data);
+        setWord(replaceSlot+1,     data);
+    }
+
+    void clear() {
+        Arrays.fill(table, 0);
+    }
+
+    static int getCompacted( long data ) {
+        return (int) data;
+    }
+
+    static int getDepth( long data ) {
+        return ((int)(data >>> 32) & 0xFF) - 1;
+    }
+
+    static int getBound( long data ) {
+        return (int)(data >>> 40) & 3;
+    }
+}
@@ -64,6 +64,11 @@ public class Connect4View implements InterfaceView{
         newGameButton.setOnAction((event) -> {
             resetGame();
         });
+
+        final Button moveNowButton = new Button("Move Now");
+        moveNowButton.setOnAction((event) -> {
+            if (controller instanceof Connect4Control) ((Connect4Control) controller).stopSearch(); // Best move so far
+        });
          
         Scene scene = new Scene(root, 750, 690, true);
         scene.setFill(Color.BLACK);
@@ -100,7 +105,7 @@ public class Connect4View implements InterfaceView{
         //});
         HBox topRow = new StrategyChoice(controller,Color.BLACK);
         Label newGameLabel = new Label("  Reset to"); 
-        topRow.getChildren().addAll(newGameLabel, newGameButton);
+        topRow.getChildren().addAll(newGameLabel, newGameButton, moveNowButton);
         root.setTop(topRow);
 
         primaryStage.setScene(scene);
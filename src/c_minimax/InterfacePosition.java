@@ -13,6 +13,8 @@ public interface InterfacePosition {
     public int  isWinner( InterfaceIterator iPos ); // Check only the move
     public int  isWinner(); // Check the entire position
     public float valuePosition(); // For example, (probability of winning)-(probability of losing)
+    public int  makeMove( int iC ); // current player moves in column iC and the turn passes; returns row iR (-1 if illegal)
+    public void unmakeMove(); // take back the last makeMove
     public void reset();
     public int  nC();
     public int  nR();
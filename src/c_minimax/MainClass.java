@@ -19,6 +19,7 @@ public class MainClass extends Application {
 
 		if (myGame == Game.CONNECT4) {
 			controller = new Connect4Control();
+			// ((Connect4Control) controller).setStrategyBParallel(true); // Connect4StrategyB on every core
 			viewer = new Connect4View(controller);
 		} else if (myGame == Game.CHECKERS) {
 			controller = new CheckersControl();
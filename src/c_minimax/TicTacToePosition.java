@@ -134,4 +134,15 @@ public class TicTacToePosition implements InterfacePosition {
         return 0/0;
     }
 
+    @Override
+    public int makeMove(int iC) {
+        // Not yet used
+        return 0/0;
+    }
+
+    @Override
+    public void unmakeMove() {
+        // Not yet used
+    }
+
 }